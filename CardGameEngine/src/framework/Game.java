@@ -7,6 +7,48 @@ public interface Game {
     void setProperty(String cardName, String propertyName, String value) throws GameException;
     void setProperty(String cardName, String propertyName, int value) throws GameException;
 
+    /**
+     * Defines the cards one by one, implementations may override this to validate the whole batch first
+     */
+    default void defineCards(String[] names) throws GameException {
+        if (names == null) {
+            throw new GameException("Card names must not be null!");
+        }
+        for (String name : names) {
+            defineCard(name);
+        }
+    }
+
+    /**
+     * Sets the values one by one, values[i] belongs to cardNames[i]
+     */
+    default void setProperties(String propertyName, String[] cardNames, String[] values) throws GameException {
+        if (cardNames == null || values == null) {
+            throw new GameException("Card names and values must not be null!");
+        }
+        if (cardNames.length != values.length) {
+            throw new GameException("Card names and values must have the same length!");
+        }
+        for (int i = 0; i < cardNames.length; i++) {
+            setProperty(cardNames[i], propertyName, values[i]);
+        }
+    }
+
+    /**
+     * Sets the values one by one, values[i] belongs to cardNames[i]
+     */
+    default void setProperties(String propertyName, String[] cardNames, int[] values) throws GameException {
+        if (cardNames == null || values == null) {
+            throw new GameException("Card names and values must not be null!");
+        }
+        if (cardNames.length != values.length) {
+            throw new GameException("Card names and values must have the same length!");
+        }
+        for (int i = 0; i < cardNames.length; i++) {
+            setProperty(cardNames[i], propertyName, values[i]);
+        }
+    }
+
     void defineRule(String propertyName, String operation) throws GameException;
     void defineRule(String propertyName, String winningName, String losingName) throws GameException;
 
@@ -0,0 +1,98 @@
+/**
+ * @author Omar Zitouni
+ * Saves a game in the background after it changed
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the game once per interval and saves it if anything changed since the last save,
+ * so a burst of mutations results in at most one save per interval.
+ * Each save writes a snapshot taken under the game's lock; setProperty/defineRule calls
+ * only wait for that copy, never for the disk write.
+ */
+public class AutoSaver implements AutoCloseable {
+
+    private final MyGame game;
+    private final Path target;
+    private final ScheduledExecutorService scheduler;
+    private long savedVersion;
+    private int saveCount;
+    private volatile GameException lastFailure;
+
+    /**
+     * Starts saving the game to the file saveToFile would write
+     *
+     * @param game           the game to save
+     * @param intervalMillis the minimum time between two saves
+     * @throws GameException if the game is null or the interval is not positive
+     */
+    public AutoSaver(MyGame game, long intervalMillis) throws GameException {
+        if (game == null) {
+            throw new GameException("Game must not be null");
+        }
+        if (intervalMillis <= 0) {
+            throw new GameException("Autosave interval must be positive: " + intervalMillis);
+        }
+        this.game = game;
+        this.target = game.saveTarget();
+        this.savedVersion = game.version();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::saveIfChanged, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of saves written so far
+     */
+    public synchronized int getSaveCount() {
+        return saveCount;
+    }
+
+    /**
+     * @return the error of the most recent failed save, or null if the last save succeeded
+     */
+    public GameException getLastFailure() {
+        return lastFailure;
+    }
+
+    private synchronized void saveIfChanged() {
+        if (game.version() == savedVersion) {
+            return;
+        }
+        try {
+            MyGame.Snapshot snapshot = game.snapshot();
+            game.replaceFile(target, snapshot.version, file -> MyGame.writeLines(file, snapshot.lines));
+            savedVersion = snapshot.version;
+            saveCount++;
+            lastFailure = null;
+        } catch (GameException e) {
+            // keep the old version so the next interval tries again
+            lastFailure = e;
+        }
+    }
+
+    /**
+     * Stops the background saves and writes pending changes one last time
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveIfChanged();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * @author Omar Zitouni
+ * Runs shell commands from a script without prompts
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class BatchRunner {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final CommandProcessor processor;
+    private long commands;
+    private long errors;
+    private long elapsedNanos;
+
+    public long getCommands() {
+        return commands;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public BatchRunner(MyGame game) {
+        this.processor = new CommandProcessor(game);
+    }
+
+    /**
+     * Runs a script file, or stdin when the path is "-", writing all output to stdout
+     *
+     * @param scriptPath the script to run, one command with its arguments per line
+     * @throws GameException if the script cannot be read
+     */
+    public void run(String scriptPath) throws GameException {
+        // stdin and stdout belong to the process and are only flushed, never closed
+        Writer out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8);
+        try {
+            if ("-".equals(scriptPath)) {
+                run(new InputStreamReader(System.in, StandardCharsets.UTF_8), out);
+            } else {
+                try (Reader in = Files.newBufferedReader(Paths.get(scriptPath), StandardCharsets.UTF_8)) {
+                    run(in, out);
+                }
+            }
+        } catch (IOException e) {
+            throw new GameException("Failed to run script: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Executes every line of the input as a command (format: command | arg1 | arg2 ...)
+     * Blank lines and lines starting with # are skipped, "quit" ends the run.
+     * Failing commands are reported inline and counted, the run continues.
+     *
+     * @param input  the commands to run
+     * @param output receives the command results, flushed once at the end
+     * @throws IOException if reading or writing fails
+     */
+    public void run(Reader input, Writer output) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader in = new BufferedReader(input, BUFFER_SIZE);
+        BufferedWriter out = new BufferedWriter(output, BUFFER_SIZE);
+        long lineNumber = 0;
+        String line;
+        try {
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] tokens = CommandProcessor.split(line);
+                if (tokens[0].equals("quit")) break;
+                commands++;
+                try {
+                    for (String result : processor.execute(tokens)) {
+                        out.write(result);
+                        out.newLine();
+                    }
+                } catch (GameException e) {
+                    errors++;
+                    out.write("Game error at line " + lineNumber + ": " + e.getMessage());
+                    out.newLine();
+                } catch (RuntimeException e) {
+                    errors++;
+                    out.write("Game error at line " + lineNumber + ": " + GameException.ERROR + e);
+                    out.newLine();
+                }
+            }
+        } finally {
+            processor.close();
+            out.flush();
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return a one line summary of the last run
+     */
+    public String summary() {
+        double seconds = elapsedNanos / 1e9;
+        double rate = seconds > 0 ? commands / seconds : 0;
+        return String.format("%d commands, %d errors in %.3f s (%.0f commands/s)", commands, errors, seconds, rate);
+    }
+}
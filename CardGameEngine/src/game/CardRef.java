@@ -0,0 +1,44 @@
+/**
+ * @author Omar Zitouni
+ * Resolved handle of a card of a game
+ */
+
+package game;
+
+/**
+ * Obtained from MyGame.resolveCard; the game keeps exactly one handle per card, so handles
+ * can be compared with ==. Methods taking a handle only check that it belongs to their game
+ * instead of looking the name up again.
+ */
+public final class CardRef {
+
+    private final MyGame game;
+    private final int id;
+    private final String name;
+
+    CardRef(MyGame game, int id, String name) {
+        this.game = game;
+        this.id = id;
+        this.name = name;
+    }
+
+    public MyGame getGame() {
+        return game;
+    }
+
+    /**
+     * @return the position of the card in the game's definition order
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * @author Omar Zitouni
+ * Executes shell commands given on a single line, used by the server and batch modes
+ */
+
+package game;
+
+import framework.Deck;
+import framework.GameException;
+
+import java.util.Set;
+
+public class CommandProcessor {
+
+    public static final String SEPARATOR = " | ";
+    public static final String HELP = "Available commands: definecard, defineproperty, "
+            + "setpropertyinteger, setpropertystring, defineruleinteger, definerulestring, savetofile, savecompressed, autosave, importcsv, reload, get, memory, quit, "
+            + "createdeck, deckaddcard, decklistcards, deckmatchinginteger, "
+            + "deckmatchingstring, deckselectbeatingcards, deckquery, deckindex, deckstats, decksave, deckload, "
+            + "playstart, playdraw, playhand, playdiscard, playrecycle";
+
+    private static final String[] NO_RESULT = new String[0];
+    // commands that read or write files, the server does not offer them to its clients
+    private static final Set<String> FILE_COMMANDS = Set.of(
+            "savetofile", "savecompressed", "autosave", "importcsv", "reload", "decksave", "deckload");
+
+    private final MyGame game;
+    private final boolean fileCommands;
+    private Deck deck;
+    private AutoSaver autoSaver;
+    private PlayState playState;
+
+    public MyGame getGame() {
+        return game;
+    }
+
+    public Deck getDeck() {
+        return deck;
+    }
+
+    public CommandProcessor(MyGame game) {
+        this(game, true);
+    }
+
+    /**
+     * @param fileCommands false to reject the commands that read or write files (savetofile, importcsv,
+     *                     reload, decksave, deckload, ...), e.g. for commands received over the network
+     */
+    public CommandProcessor(MyGame game, boolean fileCommands) {
+        this.game = game;
+        this.fileCommands = fileCommands;
+    }
+
+    /**
+     * Splits a command line into the command and its arguments
+     * Arguments are separated the same way as in .game files, e.g.
+     * setpropertyinteger | Shivan Dragon | power | 76
+     *
+     * @param line the command line
+     * @return the command followed by its arguments
+     */
+    public static String[] split(String line) {
+        int count = 1;
+        int from = 0;
+        int at;
+        while ((at = line.indexOf(SEPARATOR, from)) >= 0) {
+            count++;
+            from = at + SEPARATOR.length();
+        }
+        String[] tokens = new String[count];
+        from = 0;
+        for (int i = 0; i < count - 1; i++) {
+            at = line.indexOf(SEPARATOR, from);
+            tokens[i] = line.substring(from, at);
+            from = at + SEPARATOR.length();
+        }
+        tokens[count - 1] = line.substring(from);
+        tokens[0] = tokens[0].trim();
+        return tokens;
+    }
+
+    /**
+     * Executes one command with all of its arguments
+     * "quit" is not handled here, the caller decides what quitting means
+     *
+     * @param tokens the command followed by its arguments
+     * @return the output lines of the command (empty if the command prints nothing)
+     * @throws GameException if the command is unknown, has the wrong number of arguments or fails
+     */
+    public String[] execute(String[] tokens) throws GameException {
+        if (tokens == null || tokens.length == 0 || tokens[0].isEmpty()) {
+            throw new GameException("Command must not be empty");
+        }
+        String command = tokens[0];
+        if (!fileCommands && FILE_COMMANDS.contains(command)) {
+            throw new GameException("Command " + command + " is not available here");
+        }
+        switch (command) {
+            case "help":
+                arguments(tokens, 0);
+                return new String[] { HELP };
+            case "definecard":
+                arguments(tokens, 1);
+                game.defineCard(tokens[1]);
+                return NO_RESULT;
+            case "defineproperty":
+                arguments(tokens, 2);
+                game.defineProperty(tokens[1], tokens[2]);
+                return NO_RESULT;
+            case "setpropertyinteger":
+                arguments(tokens, 3);
+                game.setProperty(tokens[1], tokens[2], parseInt(tokens[3]));
+                return NO_RESULT;
+            case "setpropertystring":
+                arguments(tokens, 3);
+                game.setProperty(tokens[1], tokens[2], tokens[3]);
+                return NO_RESULT;
+            case "defineruleinteger":
+                arguments(tokens, 2);
+                game.defineRule(tokens[1], tokens[2]);
+                return NO_RESULT;
+            case "definerulestring":
+                arguments(tokens, 3);
+                game.defineRule(tokens[1], tokens[2], tokens[3]);
+                return NO_RESULT;
+            case "savetofile":
+                arguments(tokens, 0);
+                game.saveToFile();
+                return new String[] { "File saved in game directory" };
+            case "savecompressed":
+                arguments(tokens, 0);
+                game.saveToFileCompressed();
+                return new String[] { "Compressed file saved in game directory" };
+            case "autosave":
+                arguments(tokens, 1);
+                int seconds = parseInt(tokens[1]);
+                if (autoSaver != null) {
+                    autoSaver.close();
+                    autoSaver = null;
+                }
+                if (seconds > 0) {
+                    autoSaver = new AutoSaver(game, seconds * 1000L);
+                    return new String[] { "Autosave every " + seconds + " s" };
+                }
+                return new String[] { "Autosave stopped" };
+            case "importcsv":
+                arguments(tokens, 1);
+                int imported = new CsvImporter(game).importFile(tokens[1]);
+                return new String[] { "Imported " + imported + " cards" };
+            case "get":
+                arguments(tokens, 2);
+                return game.get(tokens[1], tokens[2]);
+            case "reload":
+                arguments(tokens, 1);
+                return game.reload(tokens[1]).toLines();
+            case "memory":
+                arguments(tokens, 0);
+                return game.memoryReport().toLines();
+            case "createdeck":
+                arguments(tokens, 0);
+                deck = game.createDeck();
+                return NO_RESULT;
+            case "deckaddcard":
+                arguments(tokens, 1);
+                requireDeck().addCard(tokens[1]);
+                return NO_RESULT;
+            case "decklistcards":
+                arguments(tokens, 0);
+                return requireDeck().getAllCards();
+            case "deckmatchinginteger":
+                arguments(tokens, 2);
+                return requireDeck().getMatchingCards(tokens[1], parseInt(tokens[2]));
+            case "deckmatchingstring":
+                arguments(tokens, 2);
+                return requireDeck().getMatchingCards(tokens[1], tokens[2]);
+            case "deckselectbeatingcards":
+                arguments(tokens, 1);
+                return requireDeck().selectBeatingCards(tokens[1]);
+            case "deckquery":
+                arguments(tokens, 1);
+                return requireMyDeck().query(tokens[1]);
+            case "deckindex":
+                arguments(tokens, 1);
+                requireMyDeck().createIndex(tokens[1]);
+                return NO_RESULT;
+            case "deckstats":
+                arguments(tokens, 0);
+                return requireMyDeck().getStatistics().toLines();
+            case "decksave":
+                arguments(tokens, 1);
+                requireMyDeck().saveToFile(tokens[1]);
+                return NO_RESULT;
+            case "deckload":
+                arguments(tokens, 1);
+                deck = MyDeck.loadFromFile(game, tokens[1]);
+                return NO_RESULT;
+            case "playstart":
+                arguments(tokens, 1);
+                playState = new PlayState(requireMyDeck(), parseInt(tokens[1]));
+                playState.shuffle();
+                return NO_RESULT;
+            case "playdraw":
+                arguments(tokens, 0);
+                int drawn = requirePlayState().draw();
+                return drawn < 0 ? new String[] { "Draw pile is empty" } : new String[] { playState.getCardName(drawn) };
+            case "playhand":
+                arguments(tokens, 0);
+                return requirePlayState().getHand();
+            case "playdiscard":
+                arguments(tokens, 1);
+                int discarded = requirePlayState().discard(parseInt(tokens[1]));
+                return new String[] { playState.getCardName(discarded) };
+            case "playrecycle":
+                arguments(tokens, 0);
+                requirePlayState().recycleDiscards();
+                playState.shuffle();
+                return NO_RESULT;
+            default:
+                throw new GameException("Unknown command: " + command);
+        }
+    }
+
+    /**
+     * Stops background work started by commands, a pending autosave is written first
+     */
+    public void close() {
+        if (autoSaver != null) {
+            autoSaver.close();
+            autoSaver = null;
+        }
+    }
+
+    private Deck requireDeck() throws GameException {
+        if (deck == null) {
+            throw new GameException("You need to create a deck first.");
+        }
+        return deck;
+    }
+
+    private MyDeck requireMyDeck() throws GameException {
+        Deck current = requireDeck();
+        if (!(current instanceof MyDeck)) {
+            throw new GameException("This command is not supported for this deck");
+        }
+        return (MyDeck) current;
+    }
+
+    private PlayState requirePlayState() throws GameException {
+        if (playState == null) {
+            throw new GameException("You need to start playing a deck first.");
+        }
+        return playState;
+    }
+
+    private static void arguments(String[] tokens, int expected) throws GameException {
+        if (tokens.length - 1 != expected) {
+            throw new GameException("Command " + tokens[0] + " expects " + expected + " argument(s) but got "
+                    + (tokens.length - 1));
+        }
+    }
+
+    private static int parseInt(String value) throws GameException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new GameException("Please enter a valid integer: " + value);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * @author Omar Zitouni
+ * Reading and writing block compressed .gamez files
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * File layout: magic "GAMZ", format byte, then blocks of
+ * [int raw length][int compressed length][int crc32 of the raw bytes][raw deflate data]
+ * terminated by a block with raw length 0.
+ * A block holds whole lines of the .game text (UTF-8, '\n' separated), so every block can be
+ * compressed, decompressed and split into lines on its own. Lines are still applied to the game
+ * in file order, only a bounded number of blocks is in flight at any time.
+ */
+final class CompressedGameFile {
+
+    static final int MAGIC = 0x47414D5A; // "GAMZ"
+    static final String EXTENSION = ".gamez";
+
+    private static final int FORMAT = 1;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private CompressedGameFile() {
+    }
+
+    /**
+     * @return true if the file starts with the compressed format's magic
+     */
+    static boolean isCompressed(Path path) throws GameException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            throw new GameException("Failed to read file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compresses the lines block by block on the common pool and writes the blocks in order
+     * MyGame.replaceFile passes a temporary file that is moved into place afterwards.
+     */
+    static void write(Path file, List<String> lines) throws GameException {
+        ArrayDeque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>();
+        int window = maxInFlight();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT);
+            StringBuilder block = new StringBuilder(BLOCK_SIZE + 256);
+            for (String line : lines) {
+                block.append(line).append('\n');
+                if (block.length() >= BLOCK_SIZE) {
+                    String text = block.toString();
+                    block.setLength(0);
+                    inFlight.add(CompletableFuture.supplyAsync(() -> compress(text), ForkJoinPool.commonPool()));
+                    if (inFlight.size() >= window) {
+                        out.write(await(inFlight.poll()));
+                    }
+                }
+            }
+            if (block.length() > 0) {
+                String text = block.toString();
+                inFlight.add(CompletableFuture.supplyAsync(() -> compress(text), ForkJoinPool.commonPool()));
+            }
+            while (!inFlight.isEmpty()) {
+                out.write(await(inFlight.poll()));
+            }
+            out.writeInt(0);
+        } catch (IOException e) {
+            throw new GameException("Failed to save file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the blocks of a compressed game file: blocks are read in order, inflated and split
+     * into lines in parallel, and their lines applied to the game in file order
+     */
+    static MyGame read(Path path) throws GameException {
+        ArrayDeque<CompletableFuture<String[]>> inFlight = new ArrayDeque<>();
+        int window = maxInFlight();
+        LineApplier applier = new LineApplier();
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new GameException("Not a compressed game file: " + path);
+            }
+            int format = in.readUnsignedByte();
+            if (format != FORMAT) {
+                throw new GameException("Unsupported compressed game format: " + format);
+            }
+            while (true) {
+                int rawLength = in.readInt();
+                if (rawLength == 0) {
+                    break;
+                }
+                int compressedLength = in.readInt();
+                int crc = in.readInt();
+                if (rawLength < 0 || rawLength > MAX_BLOCK_SIZE || compressedLength < 0 || compressedLength > MAX_BLOCK_SIZE) {
+                    throw new GameException("Corrupt compressed game file, invalid block size");
+                }
+                byte[] compressed = new byte[compressedLength];
+                in.readFully(compressed);
+                inFlight.add(CompletableFuture.supplyAsync(() -> inflate(compressed, rawLength, crc),
+                        ForkJoinPool.commonPool()));
+                if (inFlight.size() >= window) {
+                    applier.apply(await(inFlight.poll()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                applier.apply(await(inFlight.poll()));
+            }
+        } catch (EOFException e) {
+            throw new GameException("Truncated compressed game file: " + path);
+        } catch (IOException e) {
+            throw new GameException("Failed to read file: " + e.getMessage());
+        } finally {
+            for (CompletableFuture<String[]> pending : inFlight) {
+                pending.cancel(false);
+            }
+        }
+        if (applier.game == null) {
+            throw new GameException("Game file is empty");
+        }
+        return applier.game;
+    }
+
+    /**
+     * Applies lines in file order, the first line creates the game
+     */
+    private static final class LineApplier {
+        MyGame game;
+        int lineNumber;
+
+        void apply(String[] lines) throws GameException {
+            for (String line : lines) {
+                lineNumber++;
+                if (game == null) {
+                    if (!line.startsWith("Game: ")) {
+                        throw new GameException("First line must start with 'Game: '");
+                    }
+                    String gameName = line.substring("Game: ".length());
+                    if (gameName.isEmpty()) {
+                        throw new GameException("Game name must not be empty");
+                    }
+                    game = new MyGame(gameName);
+                    continue;
+                }
+                if (line.isBlank()) continue;
+                MyGame.applyLine(game, line, lineNumber);
+            }
+        }
+    }
+
+    /**
+     * @return the frame of one block: header followed by the raw deflate data
+     */
+    private static byte[] compress(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] frame = new byte[12 + raw.length / 2 + 64];
+            int length = 12;
+            while (!deflater.finished()) {
+                if (length == frame.length) {
+                    frame = Arrays.copyOf(frame, frame.length * 2);
+                }
+                length += deflater.deflate(frame, length, frame.length - length);
+            }
+            putInt(frame, 0, raw.length);
+            putInt(frame, 4, length - 12);
+            putInt(frame, 8, (int) crc.getValue());
+            return Arrays.copyOf(frame, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Inflates one block and splits it into lines ("\r\n" is accepted as well)
+     */
+    private static String[] inflate(byte[] compressed, int rawLength, int expectedCrc) {
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawLength) {
+                throw new CompletionException(new GameException("Corrupt compressed game file, block is truncated"));
+            }
+        } catch (DataFormatException e) {
+            throw new CompletionException(new GameException("Corrupt compressed game file: " + e.getMessage()));
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new CompletionException(new GameException("Corrupt compressed game file, checksum mismatch"));
+        }
+        String text = new String(raw, StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>(rawLength / 32 + 1);
+        int from = 0;
+        int at;
+        while ((at = text.indexOf('\n', from)) >= 0) {
+            int end = at > from && text.charAt(at - 1) == '\r' ? at - 1 : at;
+            lines.add(text.substring(from, end));
+            from = at + 1;
+        }
+        if (from < text.length()) {
+            lines.add(text.substring(from));
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws GameException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GameException) {
+                throw (GameException) e.getCause();
+            }
+            throw new GameException("Compression failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GameException("Interrupted while processing compressed game file");
+        }
+    }
+
+    private static int maxInFlight() {
+        return 2 * ForkJoinPool.commonPool().getParallelism() + 1;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,307 @@
+/**
+ * @author Omar Zitouni
+ * Streams card data from a CSV file into a game
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class CsvImporter {
+
+    private static final int INTEGER = 1;
+    private static final int STRING = 2;
+
+    private final MyGame game;
+    private final char separator;
+
+    // tokenizer state, reused for every row
+    private String line;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] quoted = new boolean[16];
+    private int fieldCount;
+    private final StringBuilder unescaped = new StringBuilder();
+
+    public CsvImporter(MyGame game) {
+        this(game, ',');
+    }
+
+    public CsvImporter(MyGame game, char separator) {
+        this.game = game;
+        this.separator = separator;
+    }
+
+    /**
+     * Imports a CSV file into the game, all cards or none
+     * The first header column holds the card name, every other column names an already defined
+     * integer or string property. Empty fields leave the property unset for that card.
+     * The whole file is parsed and validated first, then the cards and values are added in one
+     * defineCards/setProperties batch under the game's lock.
+     *
+     * Example:
+     * name,power,race
+     * Shivan Dragon,76,Dragon
+     * "Wrath of God",98,Angel
+     *
+     * @param path the CSV file to read
+     * @return the number of cards imported
+     * @throws GameException if the file is malformed, a card already exists, I/O fails or the game is replicated
+     */
+    public int importFile(String path) throws GameException {
+        if (path == null || path.isEmpty()) {
+            throw new GameException("path must not be null or empty");
+        }
+        if (game.isReplicated()) {
+            throw new GameException("Cannot import into a replicated game, followers would not see the cards");
+        }
+        List<String> names = new ArrayList<>();
+        // card -> line, for error messages and repeated names
+        Map<String, Integer> lines = new HashMap<>();
+        Column[] columns;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (header == null) {
+                throw new GameException("CSV file is empty");
+            }
+            if (!header.isEmpty() && header.charAt(0) == '\uFEFF') {
+                header = header.substring(1);
+            }
+            tokenize(header, 1);
+            if (fieldCount < 1) {
+                throw new GameException("Header needs a card name column at line 1");
+            }
+            columns = new Column[fieldCount];
+            for (int c = 1; c < columns.length; c++) {
+                String prop = field(c);
+                if (prop.isEmpty()) {
+                    throw new GameException("Empty property name in header column " + (c + 1) + " at line 1");
+                }
+                String type = game.getProperties().get(prop);
+                if (type == null) {
+                    throw new GameException("Property not defined before at line 1: " + prop);
+                }
+                for (int d = 1; d < c; d++) {
+                    if (columns[d].property.equals(prop)) {
+                        throw new GameException("Property appears twice in header at line 1: " + prop);
+                    }
+                }
+                columns[c] = new Column(prop, "integer".equals(type) ? INTEGER : STRING);
+            }
+
+            int lineNumber = 1;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                tokenize(line, lineNumber);
+                if (fieldCount != columns.length) {
+                    throw new GameException("Expected " + columns.length + " fields but found " + fieldCount
+                            + " at line " + lineNumber);
+                }
+                String card = field(0);
+                if (card.isEmpty()) {
+                    throw new GameException("Empty card name at line: " + lineNumber);
+                }
+                if (lines.putIfAbsent(card, lineNumber) != null) {
+                    throw new GameException("Card name already exists at line " + lineNumber + ": " + card);
+                }
+                names.add(card);
+                for (int c = 1; c < columns.length; c++) {
+                    if (isEmpty(c)) continue;
+                    if (columns[c].type == INTEGER) {
+                        columns[c].add(card, parseInt(c, lineNumber));
+                    } else {
+                        columns[c].add(card, field(c));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new GameException("Failed to read file: " + e.getMessage());
+        } finally {
+            line = null;
+        }
+
+        synchronized (game) {
+            if (game.isReplicated()) {
+                throw new GameException("Cannot import into a replicated game, followers would not see the cards");
+            }
+            for (String card : names) {
+                if (game.getCards().contains(card)) {
+                    throw new GameException("Card name already exists at line " + lines.get(card) + ": " + card);
+                }
+            }
+            game.defineCards(names.toArray(new String[0]));
+            for (int c = 1; c < columns.length; c++) {
+                columns[c].apply(game);
+            }
+        }
+        return names.size();
+    }
+
+    /**
+     * Parsed values of one property column, only for the cards that have a value
+     */
+    private static final class Column {
+        final String property;
+        final int type;
+        final List<String> cards = new ArrayList<>();
+        int[] ints = new int[16];
+        final List<String> strings = new ArrayList<>();
+
+        Column(String property, int type) {
+            this.property = property;
+            this.type = type;
+        }
+
+        void add(String card, int value) {
+            if (cards.size() == ints.length) {
+                ints = Arrays.copyOf(ints, ints.length * 2);
+            }
+            ints[cards.size()] = value;
+            cards.add(card);
+        }
+
+        void add(String card, String value) {
+            cards.add(card);
+            strings.add(value);
+        }
+
+        void apply(MyGame game) throws GameException {
+            String[] names = cards.toArray(new String[0]);
+            if (type == INTEGER) {
+                game.setProperties(property, names, Arrays.copyOf(ints, names.length));
+            } else {
+                game.setProperties(property, names, strings.toArray(new String[0]));
+            }
+        }
+    }
+
+    /**
+     * Splits a line into field boundaries without allocating per field
+     * Quoted fields may contain the separator and doubled quotes ("")
+     */
+    private void tokenize(String text, int lineNumber) throws GameException {
+        line = text;
+        fieldCount = 0;
+        int length = text.length();
+        int i = 0;
+        while (true) {
+            ensureFieldCapacity();
+            if (i < length && text.charAt(i) == '"') {
+                int start = ++i;
+                boolean closed = false;
+                while (i < length) {
+                    if (text.charAt(i) == '"') {
+                        if (i + 1 < length && text.charAt(i + 1) == '"') {
+                            i += 2;
+                            continue;
+                        }
+                        closed = true;
+                        break;
+                    }
+                    i++;
+                }
+                if (!closed) {
+                    throw new GameException("Unterminated quoted field at line " + lineNumber);
+                }
+                starts[fieldCount] = start;
+                ends[fieldCount] = i;
+                quoted[fieldCount] = true;
+                fieldCount++;
+                i++;
+                if (i < length && text.charAt(i) != separator) {
+                    throw new GameException("Unexpected character after quoted field at line " + lineNumber);
+                }
+            } else {
+                int start = i;
+                while (i < length && text.charAt(i) != separator) {
+                    i++;
+                }
+                starts[fieldCount] = start;
+                ends[fieldCount] = i;
+                quoted[fieldCount] = false;
+                fieldCount++;
+            }
+            if (i >= length) {
+                return;
+            }
+            i++; // skip separator
+        }
+    }
+
+    private void ensureFieldCapacity() {
+        if (fieldCount == starts.length) {
+            int size = starts.length * 2;
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            quoted = Arrays.copyOf(quoted, size);
+        }
+    }
+
+    private boolean isEmpty(int index) {
+        return starts[index] == ends[index];
+    }
+
+    private String field(int index) {
+        int start = starts[index];
+        int end = ends[index];
+        int quote = quoted[index] ? line.indexOf('"', start) : -1;
+        if (quote < 0 || quote >= end) {
+            return line.substring(start, end);
+        }
+        unescaped.setLength(0);
+        for (int i = start; i < end; i++) {
+            char ch = line.charAt(i);
+            unescaped.append(ch);
+            if (ch == '"') i++; // skip the second quote of ""
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * Parses an integer field straight from the line characters
+     */
+    private int parseInt(int index, int lineNumber) throws GameException {
+        int i = starts[index];
+        int end = ends[index];
+        boolean negative = false;
+        if (line.charAt(i) == '-' || line.charAt(i) == '+') {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalidInteger(index, lineNumber);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidInteger(index, lineNumber);
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw invalidInteger(index, lineNumber);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw invalidInteger(index, lineNumber);
+        }
+        return (int) value;
+    }
+
+    private GameException invalidInteger(int index, int lineNumber) {
+        return new GameException("Invalid integer value '" + field(index) + "' at line " + lineNumber);
+    }
+}
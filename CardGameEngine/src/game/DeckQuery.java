@@ -0,0 +1,552 @@
+/**
+ * @author Omar Zitouni
+ * Composite predicate queries over a deck
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expression language:
+ * expr      := term (OR term)*
+ * term      := factor (AND factor)*
+ * factor    := NOT factor | ( expr ) | predicate
+ * predicate := property op value      op: = != > >= < <=  (strings only = and !=)
+ * Names and values containing spaces or operators can be quoted: "Wrath of God"
+ *
+ * Example: type = Eldrazi AND power > 10 OR color = Blue
+ *
+ * Planning: children of AND/OR are ordered by estimated selectivity (most selective first for AND,
+ * least selective first for OR). Predicates on properties with a deck value index are answered from
+ * its bitmaps, everything else is tested card by card over the remaining candidates only,
+ * so each AND/OR level makes at most one pass over the deck.
+ */
+public final class DeckQuery {
+
+    private static final double DEFAULT_EQUALS = 0.1;
+    private static final double DEFAULT_RANGE = 0.33;
+
+    private final Node root;
+    private final String source;
+
+    private DeckQuery(Node root, String source) {
+        this.root = root;
+        this.source = source;
+    }
+
+    /**
+     * Parses and type checks an expression against the game's properties
+     *
+     * @param game       the game defining the properties
+     * @param expression the query text
+     * @return the compiled query, reusable for any deck of this game, also from several threads
+     * @throws GameException if the expression is malformed or refers to unknown properties
+     */
+    public static DeckQuery parse(MyGame game, String expression) throws GameException {
+        if (expression == null || expression.isBlank()) {
+            throw new GameException("Query must not be null or empty");
+        }
+        Parser parser = new Parser(game, tokenize(expression));
+        Node root = parser.expression();
+        if (parser.position != parser.tokens.size()) {
+            throw new GameException("Unexpected token in query: " + parser.tokens.get(parser.position).text);
+        }
+        return new DeckQuery(root, expression);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Runs the query against a deck
+     *
+     * @return the matching cards in deck order
+     */
+    public String[] execute(MyDeck deck) throws GameException {
+        List<String> cards = deck.cards();
+        int[] positions = matchingPositions(deck);
+        String[] matches = new String[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            matches[i] = cards.get(positions[i]);
+        }
+        return matches;
+    }
+
+    /**
+     * @return the deck positions of the matching cards, ascending
+     */
+    int[] matchingPositions(MyDeck deck) throws GameException {
+        List<String> cards = deck.cards();
+        Context context = new Context(deck, cards);
+        for (String property : root.properties(new ArrayList<>())) {
+            deck.getGame().ensureLoaded(property);
+        }
+        root.estimate(context);
+        BitSet all = new BitSet(cards.size());
+        all.set(0, cards.size());
+        return root.evaluate(context, all).stream().toArray();
+    }
+
+    /**
+     * State of one execution: the plan for the deck (child order, selectivities, value indexes).
+     * The parsed tree is never changed, so one query can run on different decks from several threads at once.
+     */
+    private static final class Context {
+        final MyDeck deck;
+        final MyGame game;
+        final List<String> cards;
+        final Map<Node, Double> selectivity = new IdentityHashMap<>();
+        final Map<Node, List<Node>> order = new IdentityHashMap<>();
+        final Map<Node, Map<Object, BitSet>> indexes = new IdentityHashMap<>();
+
+        Context(MyDeck deck, List<String> cards) {
+            this.deck = deck;
+            this.game = deck.getGame();
+            this.cards = cards;
+        }
+
+        double selectivity(Node node) {
+            return selectivity.get(node);
+        }
+    }
+
+    private abstract static class Node {
+
+        /** Computes selectivity (fraction of cards matching) and plans children, both kept in the context */
+        abstract void estimate(Context context);
+
+        /** Cards out of candidates that match */
+        abstract BitSet evaluate(Context context, BitSet candidates);
+
+        /** Tests a single card, used when a sibling already narrowed the candidates */
+        abstract boolean test(Context context, String card);
+
+        /** True if evaluate() is answered from an index without touching cards */
+        abstract boolean indexed(Context context);
+
+        abstract List<String> properties(List<String> into);
+    }
+
+    private static final class And extends Node {
+        final List<Node> children;
+
+        And(List<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        void estimate(Context context) {
+            double selectivity = 1;
+            for (Node child : children) {
+                child.estimate(context);
+                selectivity *= context.selectivity(child);
+            }
+            List<Node> ordered = new ArrayList<>(children);
+            ordered.sort(Comparator.comparingDouble(context::selectivity));
+            context.selectivity.put(this, selectivity);
+            context.order.put(this, ordered);
+        }
+
+        @Override
+        BitSet evaluate(Context context, BitSet candidates) {
+            BitSet result = (BitSet) candidates.clone();
+            List<Node> scanned = new ArrayList<>();
+            for (Node child : context.order.get(this)) {
+                if (child.indexed(context)) {
+                    result.and(child.evaluate(context, result));
+                } else {
+                    scanned.add(child);
+                }
+            }
+            if (scanned.isEmpty() || result.isEmpty()) {
+                return result;
+            }
+            // one pass over the remaining candidates, most selective test first
+            for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                String card = context.cards.get(i);
+                for (Node child : scanned) {
+                    if (!child.test(context, card)) {
+                        result.clear(i);
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        boolean test(Context context, String card) {
+            for (Node child : context.order.get(this)) {
+                if (!child.test(context, card)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean indexed(Context context) {
+            for (Node child : children) {
+                if (!child.indexed(context)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        List<String> properties(List<String> into) {
+            for (Node child : children) child.properties(into);
+            return into;
+        }
+    }
+
+    private static final class Or extends Node {
+        final List<Node> children;
+
+        Or(List<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        void estimate(Context context) {
+            double none = 1;
+            for (Node child : children) {
+                child.estimate(context);
+                none *= 1 - context.selectivity(child);
+            }
+            List<Node> ordered = new ArrayList<>(children);
+            ordered.sort(Comparator.comparingDouble(context::selectivity).reversed());
+            context.selectivity.put(this, 1 - none);
+            context.order.put(this, ordered);
+        }
+
+        @Override
+        BitSet evaluate(Context context, BitSet candidates) {
+            BitSet result = new BitSet();
+            List<Node> scanned = new ArrayList<>();
+            for (Node child : context.order.get(this)) {
+                if (child.indexed(context)) {
+                    result.or(child.evaluate(context, candidates));
+                } else {
+                    scanned.add(child);
+                }
+            }
+            if (scanned.isEmpty()) {
+                return result;
+            }
+            // one pass over candidates not matched yet, most likely test first
+            BitSet remaining = (BitSet) candidates.clone();
+            remaining.andNot(result);
+            for (int i = remaining.nextSetBit(0); i >= 0; i = remaining.nextSetBit(i + 1)) {
+                String card = context.cards.get(i);
+                for (Node child : scanned) {
+                    if (child.test(context, card)) {
+                        result.set(i);
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        boolean test(Context context, String card) {
+            for (Node child : context.order.get(this)) {
+                if (child.test(context, card)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean indexed(Context context) {
+            for (Node child : children) {
+                if (!child.indexed(context)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        List<String> properties(List<String> into) {
+            for (Node child : children) child.properties(into);
+            return into;
+        }
+    }
+
+    private static final class Not extends Node {
+        final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        void estimate(Context context) {
+            child.estimate(context);
+            context.selectivity.put(this, 1 - context.selectivity(child));
+        }
+
+        @Override
+        BitSet evaluate(Context context, BitSet candidates) {
+            BitSet result = (BitSet) candidates.clone();
+            result.andNot(child.evaluate(context, candidates));
+            return result;
+        }
+
+        @Override
+        boolean test(Context context, String card) {
+            return !child.test(context, card);
+        }
+
+        @Override
+        boolean indexed(Context context) {
+            return child.indexed(context);
+        }
+
+        @Override
+        List<String> properties(List<String> into) {
+            return child.properties(into);
+        }
+    }
+
+    private static final class Predicate extends Node {
+        final String property;
+        final String operator;
+        final boolean integer;
+        final int intValue;
+        final String stringValue;
+
+        Predicate(String property, String operator, boolean integer, int intValue, String stringValue) {
+            this.property = property;
+            this.operator = operator;
+            this.integer = integer;
+            this.intValue = intValue;
+            this.stringValue = stringValue;
+        }
+
+        @Override
+        void estimate(Context context) {
+            Map<Object, BitSet> index = context.deck.valueIndex(property);
+            int n = context.cards.size();
+            double selectivity;
+            if (index != null) {
+                context.indexes.put(this, index);
+            }
+            if (index != null && n > 0) {
+                selectivity = (double) indexLookup(index).cardinality() / n;
+            } else if ("=".equals(operator)) {
+                selectivity = DEFAULT_EQUALS;
+            } else if ("!=".equals(operator)) {
+                selectivity = 1 - DEFAULT_EQUALS;
+            } else {
+                selectivity = DEFAULT_RANGE;
+            }
+            context.selectivity.put(this, selectivity);
+        }
+
+        @Override
+        BitSet evaluate(Context context, BitSet candidates) {
+            Map<Object, BitSet> index = context.indexes.get(this);
+            if (index != null) {
+                BitSet result = indexLookup(index);
+                result.and(candidates);
+                return result;
+            }
+            BitSet result = new BitSet();
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (test(context, context.cards.get(i))) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+
+        /** Union of the bitmaps of all indexed values satisfying the predicate */
+        private BitSet indexLookup(Map<Object, BitSet> index) {
+            BitSet result = new BitSet();
+            if ("=".equals(operator)) {
+                BitSet bits = index.get(integer ? (Object) intValue : stringValue);
+                if (bits != null) result.or(bits);
+                return result;
+            }
+            for (Map.Entry<Object, BitSet> e : index.entrySet()) {
+                boolean matches = integer ? compare((Integer) e.getKey()) : !stringValue.equals(e.getKey());
+                if (matches) result.or(e.getValue());
+            }
+            return result;
+        }
+
+        @Override
+        boolean test(Context context, String card) {
+            if (integer) {
+                Integer value = context.game.getIntProperty(card, property);
+                return value != null && compare(value);
+            }
+            String value = context.game.getStringProperty(card, property);
+            if (value == null) return false;
+            return "=".equals(operator) == value.equals(stringValue);
+        }
+
+        private boolean compare(int value) {
+            switch (operator) {
+                case "=": return value == intValue;
+                case "!=": return value != intValue;
+                case ">": return value > intValue;
+                case ">=": return value >= intValue;
+                case "<": return value < intValue;
+                default: return value <= intValue;
+            }
+        }
+
+        @Override
+        boolean indexed(Context context) {
+            return context.indexes.containsKey(this);
+        }
+
+        @Override
+        List<String> properties(List<String> into) {
+            into.add(property);
+            return into;
+        }
+    }
+
+    private static final class Token {
+        final String text;
+        final boolean quoted;
+
+        Token(String text, boolean quoted) {
+            this.text = text;
+            this.quoted = quoted;
+        }
+
+        boolean is(String keyword) {
+            return !quoted && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    private static List<Token> tokenize(String expression) throws GameException {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(String.valueOf(c), false));
+                i++;
+            } else if (c == '"') {
+                int end = expression.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new GameException("Unterminated quote in query");
+                }
+                tokens.add(new Token(expression.substring(i + 1, end), true));
+                i = end + 1;
+            } else if (c == '=' || c == '!' || c == '<' || c == '>') {
+                boolean twoChars = i + 1 < length && expression.charAt(i + 1) == '=' && c != '=';
+                if (c == '!' && !twoChars) {
+                    throw new GameException("Unknown operator in query: !");
+                }
+                tokens.add(new Token(expression.substring(i, twoChars ? i + 2 : i + 1), false));
+                i += twoChars ? 2 : 1;
+            } else {
+                int start = i;
+                while (i < length && !Character.isWhitespace(expression.charAt(i))
+                        && "()\"=!<>".indexOf(expression.charAt(i)) < 0) {
+                    i++;
+                }
+                tokens.add(new Token(expression.substring(start, i), false));
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Parser {
+        final MyGame game;
+        final List<Token> tokens;
+        int position;
+
+        Parser(MyGame game, List<Token> tokens) {
+            this.game = game;
+            this.tokens = tokens;
+        }
+
+        Node expression() throws GameException {
+            List<Node> terms = new ArrayList<>();
+            terms.add(term());
+            while (peek("OR")) {
+                position++;
+                terms.add(term());
+            }
+            return terms.size() == 1 ? terms.get(0) : new Or(terms);
+        }
+
+        Node term() throws GameException {
+            List<Node> factors = new ArrayList<>();
+            factors.add(factor());
+            while (peek("AND")) {
+                position++;
+                factors.add(factor());
+            }
+            return factors.size() == 1 ? factors.get(0) : new And(factors);
+        }
+
+        Node factor() throws GameException {
+            if (peek("NOT")) {
+                position++;
+                return new Not(factor());
+            }
+            if (peek("(")) {
+                position++;
+                Node inner = expression();
+                if (!peek(")")) {
+                    throw new GameException("Missing ) in query");
+                }
+                position++;
+                return inner;
+            }
+            return predicate();
+        }
+
+        Node predicate() throws GameException {
+            String property = next("property name").text;
+            String operator = next("operator").text;
+            Token value = next("value");
+            String type = game.getProperties().get(property);
+            if (type == null) {
+                throw new GameException("Property not defined: " + property);
+            }
+            if (!"=".equals(operator) && !"!=".equals(operator) && !">".equals(operator)
+                    && !">=".equals(operator) && !"<".equals(operator) && !"<=".equals(operator)) {
+                throw new GameException("Unknown operator in query: " + operator);
+            }
+            if ("integer".equals(type)) {
+                try {
+                    return new Predicate(property, operator, true, Integer.parseInt(value.text), null);
+                } catch (NumberFormatException e) {
+                    throw new GameException("Invalid integer value '" + value.text + "' for property " + property);
+                }
+            }
+            if (!"=".equals(operator) && !"!=".equals(operator)) {
+                throw new GameException("String property " + property + " only supports = and !=");
+            }
+            return new Predicate(property, operator, false, 0, value.text);
+        }
+
+        private boolean peek(String text) {
+            return position < tokens.size() && tokens.get(position).is(text);
+        }
+
+        private Token next(String expected) throws GameException {
+            if (position >= tokens.size()) {
+                throw new GameException("Query ended early, expected " + expected);
+            }
+            return tokens.get(position++);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * @author Omar Zitouni
+ * Aggregates of the property values of a deck, kept up to date incrementally
+ */
+
+package game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Created by MyDeck.getStatistics() and then updated on every addCard of the deck and every value
+ * the game stores for a card of the deck (setProperty, imports, reload), so reading an aggregate never
+ * scans the deck. A card that is in the deck several times counts several times.
+ * Reads and updates synchronize on the game.
+ */
+public final class DeckStatistics {
+
+    private final MyGame game;
+    // card -> number of times it is in the deck
+    private final Map<String, Integer> occurrences = new HashMap<>();
+    private final Map<String, IntAggregate> intAggregates = new HashMap<>();
+    private final Map<String, Map<String, Integer>> frequencies = new HashMap<>();
+
+    DeckStatistics(MyGame game, List<String> deckCards) {
+        this.game = game;
+        for (String card : deckCards) {
+            cardAdded(card);
+        }
+    }
+
+    void cardAdded(String card) {
+        synchronized (game) {
+            occurrences.merge(card, 1, Integer::sum);
+            for (Map.Entry<String, String> e : game.getProperties().entrySet()) {
+                if ("integer".equals(e.getValue())) {
+                    Integer value = game.getIntProperty(card, e.getKey());
+                    if (value != null) intAggregate(e.getKey()).add(value, 1);
+                } else {
+                    String value = game.getStringProperty(card, e.getKey());
+                    if (value != null) frequencies(e.getKey()).merge(value, 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by the game, under its lock, when a card got a value
+     */
+    void valueAdded(String card, String propertyName, Object value) {
+        Integer times = occurrences.get(card);
+        if (times == null) {
+            return;
+        }
+        if (value instanceof Integer) {
+            intAggregate(propertyName).add((Integer) value, times);
+        } else {
+            frequencies(propertyName).merge((String) value, times, Integer::sum);
+        }
+    }
+
+    /**
+     * Called by the game, under its lock, when a card lost a value
+     */
+    void valueRemoved(String card, String propertyName, Object value) {
+        Integer times = occurrences.get(card);
+        if (times == null) {
+            return;
+        }
+        if (value instanceof Integer) {
+            intAggregate(propertyName).remove((Integer) value, times);
+        } else {
+            Map<String, Integer> counts = frequencies(propertyName);
+            int left = counts.getOrDefault(value, 0) - times;
+            if (left > 0) counts.put((String) value, left); else counts.remove(value);
+        }
+    }
+
+    /**
+     * @return the number of deck cards with a value for the integer property
+     */
+    public int getCount(String propertyName) {
+        synchronized (game) {
+            IntAggregate aggregate = intAggregates.get(propertyName);
+            return aggregate == null ? 0 : aggregate.count;
+        }
+    }
+
+    public long getSum(String propertyName) {
+        synchronized (game) {
+            IntAggregate aggregate = intAggregates.get(propertyName);
+            return aggregate == null ? 0 : aggregate.sum;
+        }
+    }
+
+    /**
+     * @return the smallest value or null if no deck card has a value
+     */
+    public Integer getMin(String propertyName) {
+        synchronized (game) {
+            IntAggregate aggregate = intAggregates.get(propertyName);
+            return aggregate == null || aggregate.count == 0 ? null : aggregate.min;
+        }
+    }
+
+    /**
+     * @return the largest value or null if no deck card has a value
+     */
+    public Integer getMax(String propertyName) {
+        synchronized (game) {
+            IntAggregate aggregate = intAggregates.get(propertyName);
+            return aggregate == null || aggregate.count == 0 ? null : aggregate.max;
+        }
+    }
+
+    /**
+     * @return the mean value or NaN if no deck card has a value
+     */
+    public double getMean(String propertyName) {
+        synchronized (game) {
+            IntAggregate aggregate = intAggregates.get(propertyName);
+            return aggregate == null || aggregate.count == 0 ? Double.NaN : (double) aggregate.sum / aggregate.count;
+        }
+    }
+
+    /**
+     * @return value -> number of deck cards with that value, in value order (a copy)
+     */
+    public SortedMap<Integer, Integer> getHistogram(String propertyName) {
+        synchronized (game) {
+            IntAggregate aggregate = intAggregates.get(propertyName);
+            return aggregate == null ? new TreeMap<>() : new TreeMap<>(aggregate.histogram);
+        }
+    }
+
+    /**
+     * @return value -> number of deck cards with that value of the string property (a copy)
+     */
+    public Map<String, Integer> getFrequencies(String propertyName) {
+        synchronized (game) {
+            Map<String, Integer> counts = frequencies.get(propertyName);
+            return counts == null ? Collections.emptyMap() : new HashMap<>(counts);
+        }
+    }
+
+    /**
+     * @return all aggregates as printable lines
+     */
+    public String[] toLines() {
+        synchronized (game) {
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, IntAggregate> e : new TreeMap<>(intAggregates).entrySet()) {
+                IntAggregate a = e.getValue();
+                if (a.count == 0) continue;
+                lines.add(e.getKey() + ": count " + a.count + ", min " + a.min + ", max " + a.max + ", sum " + a.sum
+                        + ", mean " + String.format("%.2f", (double) a.sum / a.count) + ", histogram " + a.histogram);
+            }
+            for (Map.Entry<String, Map<String, Integer>> e : new TreeMap<>(frequencies).entrySet()) {
+                if (e.getValue().isEmpty()) continue;
+                lines.add(e.getKey() + ": " + new TreeMap<>(e.getValue()));
+            }
+            return lines.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * @return the estimated heap held by the aggregates, used by the game's memory report
+     */
+    long byteSize() {
+        long bytes = 3 * MemoryAccount.HASH_MAP + occurrences.size() * (MemoryAccount.HASH_ENTRY + MemoryAccount.BOXED_INT);
+        for (IntAggregate aggregate : intAggregates.values()) {
+            bytes += MemoryAccount.HASH_ENTRY + 64 + aggregate.histogram.size() * (40 + 2 * MemoryAccount.BOXED_INT);
+        }
+        for (Map<String, Integer> counts : frequencies.values()) {
+            bytes += MemoryAccount.HASH_ENTRY + MemoryAccount.HASH_MAP
+                    + counts.size() * (MemoryAccount.HASH_ENTRY + MemoryAccount.BOXED_INT);
+        }
+        return bytes;
+    }
+
+    private IntAggregate intAggregate(String propertyName) {
+        return intAggregates.computeIfAbsent(propertyName, p -> new IntAggregate());
+    }
+
+    private Map<String, Integer> frequencies(String propertyName) {
+        return frequencies.computeIfAbsent(propertyName, p -> new HashMap<>());
+    }
+
+    /**
+     * Count, sum, min and max of one integer property, min/max fall back to the histogram on removal
+     */
+    private static final class IntAggregate {
+        final TreeMap<Integer, Integer> histogram = new TreeMap<>();
+        int count;
+        long sum;
+        int min;
+        int max;
+
+        void add(int value, int times) {
+            if (count == 0 || value < min) min = value;
+            if (count == 0 || value > max) max = value;
+            count += times;
+            sum += (long) value * times;
+            histogram.merge(value, times, Integer::sum);
+        }
+
+        void remove(int value, int times) {
+            Integer current = histogram.get(value);
+            if (current == null) {
+                return;
+            }
+            if (current > times) {
+                histogram.put(value, current - times);
+            } else {
+                histogram.remove(value);
+            }
+            count -= times;
+            sum -= (long) value * times;
+            if (!histogram.isEmpty()) {
+                min = histogram.firstKey();
+                max = histogram.lastKey();
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * @author Omar Zitouni
+ * Publishes the memory estimate of a game on the platform MBean server
+ */
+
+package game;
+
+import framework.GameException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+
+public class GameMemory implements GameMemoryMXBean {
+
+    // the bean does not keep the game alive, a collected game reports zero
+    private final WeakReference<MyGame> game;
+    private final String gameName;
+
+    public GameMemory(MyGame game) {
+        this.game = new WeakReference<>(game);
+        this.gameName = game.getGameName();
+    }
+
+    private MemoryReport report() {
+        MyGame current = game.get();
+        if (current == null) {
+            return new MemoryReport(gameName, 0, 0, 0, 0, 0, 0, 0, Collections.emptyMap());
+        }
+        return current.memoryReport();
+    }
+
+    /**
+     * Registers the memory bean of a game as game:type=GameMemory,name=<game name>
+     * An already registered bean for a game with the same name is replaced.
+     *
+     * @param game the game to publish
+     * @return the name the bean was registered under
+     * @throws GameException if the game is null or registration fails
+     */
+    public static ObjectName register(MyGame game) throws GameException {
+        if (game == null) {
+            throw new GameException("Game must not be null");
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = ObjectName.getInstance("game:type=GameMemory,name=" + ObjectName.quote(game.getGameName()));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new GameMemory(game), name);
+            return name;
+        } catch (JMException e) {
+            throw new GameException("Failed to register memory bean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes a bean registered with register(), unknown names are ignored
+     */
+    public static void unregister(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {
+            // not registered (anymore)
+        }
+    }
+
+    @Override
+    public String getGameName() {
+        return gameName;
+    }
+
+    @Override
+    public long getCardBytes() {
+        return report().getCardBytes();
+    }
+
+    @Override
+    public long getIntPropertyBytes() {
+        return report().getIntPropertyBytes();
+    }
+
+    @Override
+    public long getStringPropertyBytes() {
+        return report().getStringPropertyBytes();
+    }
+
+    @Override
+    public long getRuleBytes() {
+        return report().getRuleBytes();
+    }
+
+    @Override
+    public long getDeckBytes() {
+        return report().getDeckBytes();
+    }
+
+    @Override
+    public int getDeckCount() {
+        return report().getDeckCount();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        MyGame current = game.get();
+        return current == null ? 0 : current.offHeapBytes();
+    }
+
+    @Override
+    public long getTotalBytes() {
+        return report().getTotalBytes();
+    }
+
+    @Override
+    public Map<String, Integer> getCardinalities() {
+        return report().getCardinalities();
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * @author Omar Zitouni
+ * JMX view of the memory estimate of a game
+ */
+
+package game;
+
+import java.util.Map;
+
+public interface GameMemoryMXBean {
+
+    String getGameName();
+
+    long getCardBytes();
+
+    long getIntPropertyBytes();
+
+    long getStringPropertyBytes();
+
+    long getRuleBytes();
+
+    long getDeckBytes();
+
+    int getDeckCount();
+
+    long getOffHeapBytes();
+
+    long getTotalBytes();
+
+    Map<String, Integer> getCardinalities();
+}
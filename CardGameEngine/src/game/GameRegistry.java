@@ -0,0 +1,199 @@
+/**
+ * @author Omar Zitouni
+ * Keeps the games of a directory loaded on demand within a memory budget
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GameRegistry {
+
+    private static final String EXTENSION = ".game";
+
+    private final Path directory;
+    private final long memoryBudget;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // loaded games in least-recently-used order, guarded by itself
+    private final LinkedHashMap<String, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    public GameRegistry(String directory, long memoryBudget) throws GameException {
+        if (directory == null || directory.isEmpty()) {
+            throw new GameException("Directory must not be null or empty");
+        }
+        if (memoryBudget <= 0) {
+            throw new GameException("Memory budget must be positive");
+        }
+        this.directory = Paths.get(directory);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the game stored in <directory>/<name>.game, loading it on first access
+     * Concurrent callers asking for the same game share one load. If the file changed on disk
+     * since it was loaded, the game is loaded again.
+     *
+     * @param name the game file name without extension
+     * @return the loaded game
+     * @throws GameException if the name is invalid, the file does not exist or cannot be loaded
+     */
+    public MyGame get(String name) throws GameException {
+        if (name == null || name.isEmpty() || name.contains("/") || name.contains("\\")) {
+            throw new GameException("Invalid game name: " + name);
+        }
+        Path path = directory.resolve(name + EXTENSION);
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(path);
+        } catch (NoSuchFileException e) {
+            throw new GameException("Game not found: " + name);
+        } catch (IOException e) {
+            throw new GameException("Failed to read file: " + e.getMessage());
+        }
+
+        while (true) {
+            Entry current = entries.get(name);
+            if (current != null && current.modified.equals(modified)) {
+                synchronized (lru) {
+                    lru.get(name); // refresh recency
+                }
+                return await(current);
+            }
+            Entry fresh = new Entry(modified);
+            boolean owner = current == null
+                    ? entries.putIfAbsent(name, fresh) == null
+                    : entries.replace(name, current, fresh);
+            if (!owner) {
+                continue; // someone else started a load in the meantime
+            }
+            load(name, path, current, fresh);
+            return await(fresh);
+        }
+    }
+
+    /**
+     * @return the names of all game files in the directory
+     * @throws GameException if the directory cannot be listed
+     */
+    public List<String> available() throws GameException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                names.add(fileName.substring(0, fileName.length() - EXTENSION.length()));
+            }
+        } catch (IOException e) {
+            throw new GameException("Failed to list games: " + e.getMessage());
+        }
+        return names;
+    }
+
+    /**
+     * Drops a loaded game, the next get() loads it again
+     */
+    public void evict(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            synchronized (lru) {
+                if (lru.remove(name, entry)) {
+                    usedBytes -= entry.bytes;
+                }
+            }
+        }
+    }
+
+    public int loadedCount() {
+        synchronized (lru) {
+            return lru.size();
+        }
+    }
+
+    public long usedBytes() {
+        synchronized (lru) {
+            return usedBytes;
+        }
+    }
+
+    private void load(String name, Path path, Entry previous, Entry fresh) throws GameException {
+        MyGame game;
+        try {
+            game = MyGame.loadGame(path.toString());
+        } catch (GameException | RuntimeException e) {
+            entries.remove(name, fresh);
+            fresh.future.completeExceptionally(e);
+            throw e;
+        }
+        fresh.bytes = estimateBytes(game);
+        synchronized (lru) {
+            if (previous != null && lru.remove(name, previous)) {
+                usedBytes -= previous.bytes;
+            }
+            if (entries.get(name) == fresh) {
+                lru.put(name, fresh);
+                usedBytes += fresh.bytes;
+                evictOverBudget(name);
+            }
+        }
+        fresh.future.complete(game);
+    }
+
+    /**
+     * Evicts least recently used games until the budget fits, never the game just loaded
+     * Must be called while holding the lru lock
+     */
+    private void evictOverBudget(String keep) {
+        Iterator<Map.Entry<String, Entry>> it = lru.entrySet().iterator();
+        while (usedBytes > memoryBudget && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            it.remove();
+            usedBytes -= eldest.getValue().bytes;
+            entries.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private static MyGame await(Entry entry) throws GameException {
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof GameException) {
+                throw (GameException) e.getCause();
+            }
+            throw new GameException("Failed to load game: " + e.getCause());
+        }
+    }
+
+    /**
+     * Retained size of a game and its decks, from the game's memory accounting
+     */
+    static long estimateBytes(MyGame game) {
+        return game.memoryReport().getTotalBytes();
+    }
+
+    private static final class Entry {
+        final FileTime modified;
+        final CompletableFuture<MyGame> future = new CompletableFuture<>();
+        long bytes;
+
+        Entry(FileTime modified) {
+            this.modified = modified;
+        }
+    }
+}
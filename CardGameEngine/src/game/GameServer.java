@@ -0,0 +1,352 @@
+/**
+ * @author Omar Zitouni
+ * Serves one game to many clients over a line based protocol
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol (UTF-8, one request per line, requests may be pipelined):
+ * request:  command | arg1 | arg2 ...        e.g. get | card | *
+ * response: OK n followed by n result lines, or ERR message
+ *
+ * A selector thread accepts connections, reads requests and writes responses. The requests are
+ * executed on one worker thread, so commands run one after another against the shared game and
+ * need no further locking, while a slow command (deckselectbeatingcards on a large deck, ...) no
+ * longer stops the server from reading and writing. Every connection has its own deck.
+ * Commands that read or write files named by the client (savetofile, importcsv, reload, decksave,
+ * deckload, ...) are not available over the network, see CommandProcessor.
+ *
+ * A connection is not read from while its requests are executed, nor once MAX_PENDING_BYTES of
+ * responses are queued for it, until it has taken some of them.
+ */
+public class GameServer implements Runnable, Closeable {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    private final MyGame game;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "game-server-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // connections whose requests were executed, their responses are queued by the selector thread
+    private final Queue<SelectionKey> executed = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public GameServer(MyGame game, int port) throws GameException {
+        this(game, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public GameServer(MyGame game, InetSocketAddress address) throws GameException {
+        if (game == null) {
+            throw new GameException("Game must not be null");
+        }
+        this.game = game;
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address, 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            worker.shutdown();
+            throw new GameException("Failed to start server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the port the server is listening on (useful when started on port 0)
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Runs the selector loop until close() is called
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                SelectionKey done;
+                while ((done = executed.poll()) != null) {
+                    executed(done);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.printf("Server stopped: %s%n", e.getMessage());
+        } finally {
+            worker.shutdown();
+            try {
+                worker.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closeChannels();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client;
+        while ((client = serverChannel.accept()) != null) {
+            client.configureBlocking(false);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            client.register(selector, SelectionKey.OP_READ, new Connection(game));
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            disconnect(key);
+            return;
+        }
+        readBuffer.flip();
+        List<String> requests = connection.receive(readBuffer);
+        if (requests.isEmpty()) {
+            return;
+        }
+        connection.executing = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        worker.execute(() -> {
+            connection.handle(requests);
+            executed.add(key);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Queues the responses of executed requests and reads from the connection again
+     */
+    private void executed(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        connection.executing = false;
+        if (!key.isValid()) {
+            // disconnected while the requests were executed
+            connection.processor.close();
+            return;
+        }
+        connection.flushResponse();
+        try {
+            write(key);
+        } catch (IOException e) {
+            disconnect(key);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        ArrayDeque<ByteBuffer> pending = connection.pending;
+        while (!pending.isEmpty()) {
+            ByteBuffer head = pending.peek();
+            connection.pendingBytes -= channel.write(head);
+            if (head.hasRemaining()) {
+                // stop reading requests while too many responses wait for the client
+                key.interestOps(connection.pendingBytes > MAX_PENDING_BYTES || connection.executing
+                        ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            pending.poll();
+        }
+        if (connection.executing) {
+            key.interestOps(0);
+        } else if (connection.closing) {
+            disconnect(key);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        stopProcessor(key);
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // nothing left to do with this client
+        }
+    }
+
+    private static void stopProcessor(SelectionKey key) {
+        // a connection whose requests are being executed is stopped once they are done
+        if (key.attachment() instanceof Connection && !((Connection) key.attachment()).executing) {
+            ((Connection) key.attachment()).processor.close();
+        }
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : selector.keys()) {
+            // the worker has stopped, requests still marked as executing are done
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).processor.close();
+            }
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+                // shutting down anyway
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // shutting down anyway
+        }
+    }
+
+    /**
+     * Per client state: partial request line, own deck and queued responses
+     * The selector thread hands requests to the worker and takes the response back through the
+     * executor and the executed queue, only one of them uses the connection's response at a time.
+     */
+    private static final class Connection {
+        private final CommandProcessor processor;
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        // bytes of pending not yet written
+        private long pendingBytes;
+        private final StringBuilder response = new StringBuilder();
+        private byte[] line = new byte[256];
+        private int lineLength;
+        private boolean closing;
+        // requests are being executed on the worker thread
+        private boolean executing;
+
+        Connection(MyGame game) {
+            processor = new CommandProcessor(game, false);
+        }
+
+        /**
+         * Consumes received bytes
+         *
+         * @return the complete requests in order, null stands for a request line that is too long
+         */
+        List<String> receive(ByteBuffer data) {
+            List<String> requests = new ArrayList<>();
+            while (data.hasRemaining() && !closing) {
+                byte b = data.get();
+                if (b == '\n') {
+                    int length = lineLength;
+                    if (length > 0 && line[length - 1] == '\r') length--;
+                    requests.add(new String(line, 0, length, StandardCharsets.UTF_8));
+                    lineLength = 0;
+                } else if (lineLength == MAX_LINE_LENGTH) {
+                    requests.add(null);
+                    break;
+                } else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, Math.min(MAX_LINE_LENGTH, line.length * 2));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            return requests;
+        }
+
+        /**
+         * Executes the requests in order on the worker thread, stops at quit or a line that is too long
+         */
+        void handle(List<String> requests) {
+            for (String request : requests) {
+                if (closing) {
+                    return;
+                }
+                if (request == null) {
+                    response.append("ERR ").append(GameException.ERROR).append("Request line too long\n");
+                    closing = true;
+                    return;
+                }
+                handle(request);
+            }
+        }
+
+        private void handle(String request) {
+            if (request.isBlank()) return;
+            String[] tokens = CommandProcessor.split(request);
+            if (tokens[0].equals("quit")) {
+                response.append("OK 0\n");
+                closing = true;
+                return;
+            }
+            try {
+                String[] results = processor.execute(tokens);
+                response.append("OK ").append(results.length).append('\n');
+                for (String result : results) {
+                    response.append(result).append('\n');
+                }
+            } catch (GameException e) {
+                response.append("ERR ").append(e.getMessage()).append('\n');
+            } catch (RuntimeException e) {
+                response.append("ERR ").append(GameException.ERROR).append(e).append('\n');
+            }
+        }
+
+        private void flushResponse() {
+            if (response.length() > 0) {
+                byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+                pending.add(ByteBuffer.wrap(bytes));
+                pendingBytes += bytes.length;
+                response.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * @author Omar Zitouni
+ * Byte offset index of the CardProperty lines of a .game file, used by lazy loading
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+final class LazyPropertyIndex {
+
+    private static final byte[] CARD_PROPERTY = "CardProperty: ".getBytes(StandardCharsets.UTF_8);
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private final Path path;
+    private long fileSize;
+    // property name -> lines not yet applied to the game
+    private final Map<String, Lines> pending = new HashMap<>();
+
+    private LazyPropertyIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * First pass over a .game file: applies every line except CardProperty lines,
+     * which are only indexed by property name and byte offset
+     *
+     * @param path the file to read
+     * @return the game without property values and the index to materialize them later
+     * @throws GameException if the file is malformed or I/O fails
+     */
+    static MyGame load(Path path) throws GameException {
+        LazyPropertyIndex index = new LazyPropertyIndex(path);
+        MyGame game = null;
+        byte[] buffer = new byte[WINDOW_SIZE];
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        long lineStart = 0;
+        long position = 0;
+        int lineNumber = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n') {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = buffer[i];
+                        continue;
+                    }
+                    game = index.accept(game, line, lineLength, lineStart, ++lineNumber);
+                    lineLength = 0;
+                    lineStart = position + i + 1;
+                }
+                position += read;
+            }
+            if (lineLength > 0) {
+                game = index.accept(game, line, lineLength, lineStart, ++lineNumber);
+            }
+            index.fileSize = position;
+        } catch (IOException e) {
+            throw new GameException("Failed to read file: " + e.getMessage());
+        }
+        if (game == null) {
+            throw new GameException("Game file is empty");
+        }
+        if (!index.pending.isEmpty()) {
+            game.attachLazyIndex(index);
+        }
+        return game;
+    }
+
+    private static MyGame header(String first) throws GameException {
+        if (!first.startsWith("Game: ")) {
+            throw new GameException("First line must start with 'Game: '");
+        }
+        String gameName = first.substring("Game: ".length());
+        if (gameName.isEmpty()) {
+            throw new GameException("Game name must not be empty");
+        }
+        return new MyGame(gameName);
+    }
+
+    /**
+     * Handles one line without its line feed; the first line creates the game
+     */
+    private MyGame accept(MyGame game, byte[] line, int length, long offset, int lineNumber) throws GameException {
+        if (length > 0 && line[length - 1] == '\r') length--;
+        if (game == null) {
+            return header(new String(line, 0, length, StandardCharsets.UTF_8));
+        }
+        if (!startsWith(line, length, CARD_PROPERTY)) {
+            String text = new String(line, 0, length, StandardCharsets.UTF_8);
+            if (!text.isBlank()) {
+                MyGame.applyLine(game, text, lineNumber);
+            }
+            return game;
+        }
+        // only the property name is decoded now: "CardProperty: <card> | <property> | <value>"
+        int first = indexOfSeparator(line, CARD_PROPERTY.length, length);
+        int second = first < 0 ? -1 : indexOfSeparator(line, first + 3, length);
+        if (second < 0) {
+            throw new GameException("Malformed CardProperty at line: " + lineNumber);
+        }
+        String prop = new String(line, first + 3, second - first - 3, StandardCharsets.UTF_8);
+        if (!game.getProperties().containsKey(prop)) {
+            throw new GameException("Property not defined before at line " + lineNumber);
+        }
+        pending.computeIfAbsent(prop, k -> new Lines()).add(offset, length, lineNumber);
+        return game;
+    }
+
+    boolean isPending(String propertyName) {
+        return pending.containsKey(propertyName);
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    String[] pendingProperties() {
+        return pending.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Reads the indexed lines of one property with positioned reads and applies them to the game
+     * All lines are read and validated before the first value is stored and the property stays pending
+     * until then, so a changed or invalid file leaves the property unloaded instead of half loaded.
+     * Called under the game's lock.
+     */
+    void materialize(MyGame game, String propertyName) throws GameException {
+        Lines lines = pending.get(propertyName);
+        if (lines == null) {
+            return;
+        }
+        String[] texts = read(lines);
+        boolean integer = "integer".equals(game.getProperties().get(propertyName));
+        String[] cards = new String[lines.count];
+        String[] values = new String[lines.count];
+        int[] intValues = integer ? new int[lines.count] : null;
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i = 0; i < lines.count; i++) {
+            int lineNumber = lines.lineNumbers[i];
+            String[] parts = texts[i].substring(CARD_PROPERTY.length).split(" \\| ", -1);
+            if (parts.length != 3 || !parts[1].equals(propertyName)) {
+                throw new GameException("Malformed CardProperty at line: " + lineNumber);
+            }
+            if (parts[0].isEmpty() || parts[2].isEmpty()) {
+                throw new GameException("Empty CardProperty token at line " + lineNumber);
+            }
+            int id = game.cardId(parts[0]);
+            if (id < 0) {
+                throw new GameException("Card not defined: " + parts[0] + " at line " + lineNumber);
+            }
+            // values can only be set for a property once it is loaded, so the file is the only source of duplicates
+            Integer previous = seen.put(parts[0], lineNumber);
+            if (previous != null) {
+                throw new GameException("Property already set for card: " + parts[0] + "." + propertyName
+                        + " at line " + lineNumber);
+            }
+            if (integer) {
+                try {
+                    intValues[i] = Integer.parseInt(parts[2]);
+                } catch (NumberFormatException e) {
+                    throw new GameException("Invalid integer value '" + parts[2] + "' at line " + lineNumber);
+                }
+            }
+            cards[i] = game.cardName(id);
+            values[i] = parts[2];
+        }
+        pending.remove(propertyName);
+        for (int i = 0; i < lines.count; i++) {
+            if (integer) {
+                game.putIntProperty(cards[i], propertyName, intValues[i]);
+            } else {
+                game.putStringProperty(cards[i], propertyName, values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the text of the indexed lines, in file order
+     */
+    private String[] read(Lines lines) throws GameException {
+        String[] texts = new String[lines.count];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != fileSize) {
+                throw new GameException("Game file changed since it was loaded: " + path);
+            }
+            ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+            long windowStart = -1;
+            int windowLength = 0;
+            for (int i = 0; i < lines.count; i++) {
+                long offset = lines.offsets[i];
+                int length = lines.lengths[i];
+                if (length > WINDOW_SIZE) {
+                    ByteBuffer single = ByteBuffer.allocate(length);
+                    readFully(channel, single, offset);
+                    texts[i] = new String(single.array(), StandardCharsets.UTF_8);
+                    continue;
+                }
+                if (windowStart < 0 || offset < windowStart || offset + length > windowStart + windowLength) {
+                    window.clear();
+                    window.limit((int) Math.min(WINDOW_SIZE, fileSize - offset));
+                    readFully(channel, window, offset);
+                    windowStart = offset;
+                    windowLength = window.limit();
+                }
+                texts[i] = new String(window.array(), (int) (offset - windowStart), length, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new GameException("Failed to read file: " + e.getMessage());
+        }
+        for (int i = 0; i < texts.length; i++) {
+            if (!texts[i].startsWith("CardProperty: ")) {
+                throw new GameException("Game file changed since it was loaded: " + path);
+            }
+        }
+        return texts;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static boolean startsWith(byte[] line, int length, byte[] prefix) {
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOfSeparator(byte[] line, int from, int length) {
+        for (int i = from; i + 2 < length; i++) {
+            if (line[i] == ' ' && line[i + 1] == '|' && line[i + 2] == ' ') return i;
+        }
+        return -1;
+    }
+
+    private static final class Lines {
+        long[] offsets = new long[16];
+        int[] lengths = new int[16];
+        int[] lineNumbers = new int[16];
+        int count;
+
+        void add(long offset, int length, int lineNumber) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+            }
+            offsets[count] = offset;
+            lengths[count] = length;
+            lineNumbers[count] = lineNumber;
+            count++;
+        }
+    }
+}
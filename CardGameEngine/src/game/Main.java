@@ -3,40 +3,72 @@ package game;
 import framework.Deck;
 import framework.GameException;
 
+import javax.management.ObjectName;
+import java.util.ArrayList;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Main {
 
+    private static final String DEFAULT_GAME = "./games/Magic.game";
+
     /**
      * Main entry point of the program.
+     * Usage: Main [game file]                  interactive shell
+     *        Main --server <port> [game file]  serve the game to clients on localhost
+     *        Main --batch <script|-> [game file] run commands from a script or stdin
      *
      * @param args Command line arguments.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            if (args.length < 2 || args.length > 3) {
+                System.err.println("Usage: Main --server <port> [game file]");
+                return;
+            }
+            runServer(args[1], args.length == 3 ? args[2] : DEFAULT_GAME);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            if (args.length < 2 || args.length > 3) {
+                System.err.println("Usage: Main --batch <script|-> [game file]");
+                return;
+            }
+            runBatch(args[1], args.length == 3 ? args[2] : DEFAULT_GAME);
+            return;
+        }
 
         System.out.println("Welcome to the card game interactive shell!");
         System.out.println("Type \"help\" for a list of available commands.");
 
         MyGame game;
         try {
-             game = MyGame.loadGame("./games/Magic.game");
+             game = MyGame.loadGame(args.length > 0 ? args[0] : DEFAULT_GAME);
             //game = new MyGame("Magic");
         } catch (GameException e) {
             System.err.printf("Failed to create a game: %s%n", e.getMessage());
             return;
         }
+        ObjectName memoryBean = null;
+        try {
+            memoryBean = GameMemory.register(game);
+        } catch (GameException e) {
+            System.err.printf("Memory statistics are not available over JMX: %s%n", e.getMessage());
+        }
         Scanner scanner = new Scanner(System.in);
         Deck deck = null;
+        AutoSaver autoSaver = null;
+        // savetofile writes in the background, quit waits for these
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
         while (true) {
             try {
                 System.out.printf("> ");
                 String command = scanner.nextLine();
                 if (command.equals("help")) {
-                    System.out.println("Available commands: definecard, defineproperty, "
-                            + "setpropertyinteger, setpropertystring, defineruleinteger, definerulestring, savetofile, get, quit, "
-                            + "createdeck, deckaddcard, decklistcards, deckmatchinginteger, "
-                            + "deckmatchingstring, deckselectbeatingcards");
+                    System.out.println(CommandProcessor.HELP);
                 } else if (command.equals("definecard")) {
                     System.out.printf("Name: ");
                     game.defineCard(scanner.nextLine());
@@ -90,8 +122,43 @@ public class Main {
                     String losingName = scanner.nextLine();
                     game.defineRule(propertyName, winningName, losingName);
                 } else if (command.equals("savetofile")) {
-                    System.out.println("File saved in game directory");
-                    game.saveToFile();
+                    saves.removeIf(CompletableFuture::isDone);
+                    saves.add(game.saveToFileAsync().whenComplete((ignored, failure) -> {
+                        if (failure == null) {
+                            System.out.println("File saved in game directory");
+                        } else {
+                            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                                    ? failure.getCause() : failure;
+                            System.err.printf("Game error: %s%n", cause.getMessage());
+                        }
+                    }));
+                } else if (command.equals("savecompressed")) {
+                    game.saveToFileCompressed();
+                    System.out.println("Compressed file saved in game directory");
+                } else if (command.equals("autosave")) {
+                    System.out.printf("Interval in seconds (0 to stop): ");
+                    int seconds = Integer.parseInt(scanner.nextLine().trim());
+                    if (autoSaver != null) {
+                        autoSaver.close();
+                        autoSaver = null;
+                    }
+                    if (seconds > 0) {
+                        autoSaver = new AutoSaver(game, seconds * 1000L);
+                    }
+                } else if (command.equals("importcsv")) {
+                    System.out.printf("CSV file path: ");
+                    String csvPath = scanner.nextLine();
+                    int imported = new CsvImporter(game).importFile(csvPath);
+                    System.out.printf("Imported %d cards%n", imported);
+                } else if (command.equals("reload")) {
+                    System.out.printf("Game file path: ");
+                    for (String line : game.reload(scanner.nextLine()).toLines()) {
+                        System.out.println(line);
+                    }
+                } else if (command.equals("memory")) {
+                    for (String line : game.memoryReport().toLines()) {
+                        System.out.println(line);
+                    }
                 } else if (command.equals("get")) {
                     System.out.printf("Get type ('card', 'property' or 'rule'): ");
                     String getType = scanner.nextLine();
@@ -173,6 +240,45 @@ public class Main {
                     } else {
                         System.err.println("You need to create a deck first.");
                     }
+                } else if (command.equals("deckquery")) {
+                    if (deck instanceof MyDeck) {
+                        System.out.printf("Query: ");
+                        String[] cards = ((MyDeck) deck).query(scanner.nextLine());
+                        for (String card : cards) {
+                            System.out.println(card);
+                        }
+                    } else {
+                        System.err.println("You need to create a deck first.");
+                    }
+                } else if (command.equals("deckindex")) {
+                    if (deck instanceof MyDeck) {
+                        System.out.printf("Property name: ");
+                        ((MyDeck) deck).createIndex(scanner.nextLine());
+                    } else {
+                        System.err.println("You need to create a deck first.");
+                    }
+                } else if (command.equals("deckstats")) {
+                    if (deck instanceof MyDeck) {
+                        for (String line : ((MyDeck) deck).getStatistics().toLines()) {
+                            System.out.println(line);
+                        }
+                    } else {
+                        System.err.println("You need to create a deck first.");
+                    }
+                } else if (command.equals("decksave")) {
+                    if (deck instanceof MyDeck) {
+                        System.out.printf("Deck file path: ");
+                        ((MyDeck) deck).saveToFile(scanner.nextLine());
+                    } else {
+                        System.err.println("You need to create a deck first.");
+                    }
+                } else if (command.equals("deckload")) {
+                    System.out.printf("Deck file path: ");
+                    String deckPath = scanner.nextLine();
+                    if (deck != null) {
+                        System.out.println("Replacing previous deck instance.");
+                    }
+                    deck = MyDeck.loadFromFile(game, deckPath);
                 } else if (command.equals("quit")) {
                     break;
                 } else {
@@ -181,8 +287,52 @@ public class Main {
 
             } catch (GameException e) {
                 System.err.printf("Game error: %s%n", e.getMessage());
+            } catch (NumberFormatException e) {
+                System.err.println("Please enter a valid integer!");
+            }
+        }
+        for (CompletableFuture<Void> save : saves) {
+            try {
+                save.join();
+            } catch (CompletionException e) {
+                // already reported when the save finished
             }
         }
+        if (autoSaver != null) {
+            autoSaver.close();
+        }
+        if (memoryBean != null) {
+            GameMemory.unregister(memoryBean);
+        }
         scanner.close();
     }
-}
\ No newline at end of file
+
+    private static void runServer(String port, String gamePath) {
+        ObjectName memoryBean = null;
+        try {
+            MyGame game = MyGame.loadGame(gamePath);
+            memoryBean = GameMemory.register(game);
+            GameServer server = new GameServer(game, Integer.parseInt(port));
+            System.out.printf("Serving %s on localhost:%d%n", game.getGameName(), server.getPort());
+            server.run();
+        } catch (NumberFormatException e) {
+            System.err.printf("Invalid port: %s%n", port);
+        } catch (GameException e) {
+            System.err.printf("Failed to start server: %s%n", e.getMessage());
+        } finally {
+            if (memoryBean != null) {
+                GameMemory.unregister(memoryBean);
+            }
+        }
+    }
+
+    private static void runBatch(String scriptPath, String gamePath) {
+        try {
+            BatchRunner runner = new BatchRunner(MyGame.loadGame(gamePath));
+            runner.run(scriptPath);
+            System.err.println(runner.summary());
+        } catch (GameException e) {
+            System.err.printf("Batch failed: %s%n", e.getMessage());
+        }
+    }
+}
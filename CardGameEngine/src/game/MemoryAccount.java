@@ -0,0 +1,277 @@
+/**
+ * @author Omar Zitouni
+ * Running estimate of the heap retained by a game
+ */
+
+package game;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counters updated by MyGame on every change, so reading them is O(1)
+ * Sizes assume a 64-bit JVM with compressed references: 16 byte object headers (rounded),
+ * 4 byte references, 32 byte HashMap nodes, 40 byte LinkedHashMap entries and Latin-1 compact strings.
+ * The numbers are estimates for capacity planning, not exact measurements.
+ */
+final class MemoryAccount {
+
+    static final long REFERENCE = 4;
+    static final long HASH_ENTRY = 32 + 2 * REFERENCE;    // node plus table slot at 0.75 load factor
+    static final long LINKED_ENTRY = 40 + 2 * REFERENCE;
+    static final long HASH_MAP = 48 + 16 + 4 * REFERENCE; // map, table header, initial capacity 4
+    static final long BOXED_INT = 16;
+    static final long COUNT_ENTRY = 2 * (8 + 4);          // hash and count, table at most half full
+
+    long cardBytes;
+    long ruleBytes;
+    // property definitions and value counts
+    private long intPropertyBytes;
+    private long stringPropertyBytes;
+    // per-card value maps, only values held on the heap
+    private long intValueBytes;
+    private long stringValueBytes;
+
+    // property -> value hash -> number of cards with that value; values themselves are not retained
+    private final Map<String, HashCounts> valueCounts = new HashMap<>();
+
+    static long stringBytes(String value) {
+        int length = value.length();
+        boolean latin1 = true;
+        for (int i = 0; i < length && latin1; i++) {
+            latin1 = value.charAt(i) <= 0xFF;
+        }
+        return 24 + align(16 + (long) length * (latin1 ? 1 : 2));
+    }
+
+    static long boxedIntBytes(int value) {
+        return value >= -128 && value <= 127 ? 0 : BOXED_INT; // Integer cache
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    void cardDefined(String name) {
+        // cards set entry, card table slot, id map entry, the boxed id and the card handle
+        cardBytes += stringBytes(name) + LINKED_ENTRY + REFERENCE + HASH_ENTRY + BOXED_INT + REFERENCE + 24;
+    }
+
+    void propertyDefined(String name, boolean integer) {
+        long bytes = HASH_ENTRY + stringBytes(name);
+        if (integer) intPropertyBytes += bytes; else stringPropertyBytes += bytes;
+    }
+
+    /**
+     * @param newCardMap true if the card got its first value of this kind
+     */
+    void intStored(boolean newCardMap, int value) {
+        intValueBytes += (newCardMap ? HASH_ENTRY + HASH_MAP : 0) + HASH_ENTRY + boxedIntBytes(value);
+    }
+
+    void stringStored(boolean newCardMap, String value) {
+        stringValueBytes += (newCardMap ? HASH_ENTRY + HASH_MAP : 0) + HASH_ENTRY + stringBytes(value);
+    }
+
+    /**
+     * Values moved off heap no longer count, the card maps are cleared
+     */
+    void heapValuesCleared() {
+        intValueBytes = 0;
+        stringValueBytes = 0;
+    }
+
+    long intPropertyBytes() {
+        return intPropertyBytes + intValueBytes;
+    }
+
+    long stringPropertyBytes() {
+        return stringPropertyBytes + stringValueBytes;
+    }
+
+    void intRemoved(String propertyName, int value) {
+        intValueBytes -= HASH_ENTRY + boxedIntBytes(value);
+        valueRemoved(propertyName, value);
+    }
+
+    void stringRemoved(String propertyName, String value) {
+        stringValueBytes -= HASH_ENTRY + stringBytes(value);
+        valueRemoved(propertyName, value);
+    }
+
+    void intRuleDefined(boolean replaced) {
+        if (!replaced) ruleBytes += HASH_ENTRY;
+    }
+
+    void stringRuleDefined(boolean newProperty, boolean newWinner, String winner, String loser) {
+        long bytes = HASH_ENTRY + stringBytes(loser);
+        if (newProperty) bytes += HASH_ENTRY + HASH_MAP;
+        if (newWinner) bytes += HASH_ENTRY + 16 + HASH_MAP + stringBytes(winner);
+        ruleBytes += bytes;
+    }
+
+    void intRuleRemoved() {
+        ruleBytes -= HASH_ENTRY;
+    }
+
+    void stringRuleRemoved(String loser) {
+        ruleBytes -= HASH_ENTRY + stringBytes(loser);
+    }
+
+    void stringRuleWinnerRemoved(String winner) {
+        ruleBytes -= HASH_ENTRY + 16 + HASH_MAP + stringBytes(winner);
+    }
+
+    void stringRulePropertyRemoved() {
+        ruleBytes -= HASH_ENTRY + HASH_MAP;
+    }
+
+    /**
+     * Counts one more card with this value, the counting table itself is part of the estimate
+     */
+    void valueAdded(String propertyName, Object value) {
+        HashCounts counts = valueCounts.computeIfAbsent(propertyName, p -> new HashCounts());
+        if (counts.add(hash(value))) {
+            if (value instanceof Integer) intPropertyBytes += COUNT_ENTRY; else stringPropertyBytes += COUNT_ENTRY;
+        }
+    }
+
+    void offHeapValueRemoved(String propertyName, Object value) {
+        valueRemoved(propertyName, value);
+    }
+
+    private void valueRemoved(String propertyName, Object value) {
+        HashCounts counts = valueCounts.get(propertyName);
+        if (counts != null && counts.remove(hash(value))) {
+            if (value instanceof Integer) intPropertyBytes -= COUNT_ENTRY; else stringPropertyBytes -= COUNT_ENTRY;
+        }
+    }
+
+    /**
+     * @return property -> number of distinct values (exact for integers, strings are told apart by a 64-bit hash)
+     */
+    Map<String, Integer> cardinalities(Iterable<String> propertyNames) {
+        Map<String, Integer> result = new HashMap<>();
+        for (String prop : propertyNames) {
+            HashCounts counts = valueCounts.get(prop);
+            result.put(prop, counts == null ? 0 : counts.size());
+        }
+        return result;
+    }
+
+    /**
+     * 64-bit hash of a property value, a bijection for integers and FNV-1a over the chars for strings
+     */
+    static long hash(Object value) {
+        long h;
+        if (value instanceof Integer) {
+            h = (Integer) value;
+        } else {
+            String text = (String) value;
+            h = 0xcbf29ce484222325L;
+            for (int i = 0; i < text.length(); i++) {
+                h = (h ^ text.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        // murmur3 finalizer, spreads the bits over the table index
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Open addressing hash -> count table with linear probing, 0 marks a free slot
+     */
+    private static final class HashCounts {
+        private long[] keys = new long[8];
+        private int[] counts = new int[8];
+        private int size;
+        // the hash 0 can not be stored in the table, its count is kept apart
+        private int zeroCount;
+
+        int size() {
+            return size + (zeroCount > 0 ? 1 : 0);
+        }
+
+        /**
+         * @return true if the hash was not counted before
+         */
+        boolean add(long key) {
+            if (key == 0) {
+                return zeroCount++ == 0;
+            }
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    counts[i]++;
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            counts[i] = 1;
+            size++;
+            return true;
+        }
+
+        /**
+         * @return true if the last occurrence of the hash was removed
+         */
+        boolean remove(long key) {
+            if (key == 0) {
+                return zeroCount > 0 && --zeroCount == 0;
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            if (--counts[i] > 0) {
+                return false;
+            }
+            // backward shift deletion: move later entries of the probe run into the gap
+            // unless that would put them before their home slot
+            int gap = i;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    counts[gap] = counts[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = 0;
+            counts[gap] = 0;
+            size--;
+            return true;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldKeys[k] == 0) continue;
+                int i = slot(oldKeys[k], mask);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[k];
+                counts[i] = oldCounts[k];
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
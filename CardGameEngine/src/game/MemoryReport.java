@@ -0,0 +1,118 @@
+/**
+ * @author Omar Zitouni
+ * Estimated memory use of a game and its decks
+ */
+
+package game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class MemoryReport {
+
+    private final String gameName;
+    private final long cardBytes;
+    private final long intPropertyBytes;
+    private final long stringPropertyBytes;
+    private final long ruleBytes;
+    private final long deckBytes;
+    private final int deckCount;
+    private final long offHeapBytes;
+    private final Map<String, Integer> cardinalities;
+
+    MemoryReport(String gameName, long cardBytes, long intPropertyBytes, long stringPropertyBytes, long ruleBytes,
+                 long deckBytes, int deckCount, long offHeapBytes, Map<String, Integer> cardinalities) {
+        this.gameName = gameName;
+        this.cardBytes = cardBytes;
+        this.intPropertyBytes = intPropertyBytes;
+        this.stringPropertyBytes = stringPropertyBytes;
+        this.ruleBytes = ruleBytes;
+        this.deckBytes = deckBytes;
+        this.deckCount = deckCount;
+        this.offHeapBytes = offHeapBytes;
+        this.cardinalities = Collections.unmodifiableMap(new TreeMap<>(cardinalities));
+    }
+
+    public String getGameName() {
+        return gameName;
+    }
+
+    /**
+     * Card names, the cards set and the card id table
+     */
+    public long getCardBytes() {
+        return cardBytes;
+    }
+
+    /**
+     * Integer property definitions and the integer values stored on the heap
+     */
+    public long getIntPropertyBytes() {
+        return intPropertyBytes;
+    }
+
+    /**
+     * String property definitions and the string values stored on the heap
+     */
+    public long getStringPropertyBytes() {
+        return stringPropertyBytes;
+    }
+
+    public long getRuleBytes() {
+        return ruleBytes;
+    }
+
+    /**
+     * Card lists and derived structures (rule columns, value indexes) of all live decks
+     */
+    public long getDeckBytes() {
+        return deckBytes;
+    }
+
+    public int getDeckCount() {
+        return deckCount;
+    }
+
+    /**
+     * Native memory of values moved off heap, not part of getTotalBytes()
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * @return the estimated heap retained by the game and its decks
+     */
+    public long getTotalBytes() {
+        return cardBytes + intPropertyBytes + stringPropertyBytes + ruleBytes + deckBytes;
+    }
+
+    /**
+     * @return property name -> number of distinct values, sorted by property name
+     */
+    public Map<String, Integer> getCardinalities() {
+        return cardinalities;
+    }
+
+    /**
+     * @return the report as printable lines
+     */
+    public String[] toLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Game: " + gameName);
+        lines.add("Cards: " + cardBytes + " bytes");
+        lines.add("Integer properties: " + intPropertyBytes + " bytes");
+        lines.add("String properties: " + stringPropertyBytes + " bytes");
+        lines.add("Rules: " + ruleBytes + " bytes");
+        lines.add("Decks (" + deckCount + "): " + deckBytes + " bytes");
+        lines.add("Off heap: " + offHeapBytes + " bytes");
+        lines.add("Total heap: " + getTotalBytes() + " bytes");
+        for (Map.Entry<String, Integer> e : cardinalities.entrySet()) {
+            lines.add("Distinct values of " + e.getKey() + ": " + e.getValue());
+        }
+        return lines.toArray(new String[0]);
+    }
+}
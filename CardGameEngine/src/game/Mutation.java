@@ -0,0 +1,159 @@
+/**
+ * @author Omar Zitouni
+ * One entry of the replication log
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class Mutation {
+
+    public static final byte GAME = 0;
+    public static final byte DEFINE_CARD = 1;
+    public static final byte DEFINE_PROPERTY = 2;
+    public static final byte SET_PROPERTY_STRING = 3;
+    public static final byte SET_PROPERTY_INTEGER = 4;
+    public static final byte DEFINE_RULE_INTEGER = 5;
+    public static final byte DEFINE_RULE_STRING = 6;
+    public static final byte DEFINE_CARDS = 7;
+    public static final byte SET_PROPERTIES_STRING = 8;
+    public static final byte SET_PROPERTIES_INTEGER = 9;
+
+    private final long sequence;
+    private final byte operation;
+    private final String[] arguments;
+
+    public Mutation(long sequence, byte operation, String... arguments) {
+        this.sequence = sequence;
+        this.operation = operation;
+        this.arguments = arguments;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public byte getOperation() {
+        return operation;
+    }
+
+    public String[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Applies this mutation to a game through its public API
+     * GAME entries only name the game and are handled by the follower itself.
+     *
+     * @throws GameException if the game rejects the mutation
+     */
+    void applyTo(MyGame game) throws GameException {
+        if (arguments.length < arity(operation)) {
+            throw new GameException("Corrupt mutation " + sequence + ", too few arguments: " + arguments.length);
+        }
+        switch (operation) {
+            case DEFINE_CARD:
+                game.defineCard(arguments[0]);
+                break;
+            case DEFINE_PROPERTY:
+                game.defineProperty(arguments[0], arguments[1]);
+                break;
+            case SET_PROPERTY_STRING:
+                game.setProperty(arguments[0], arguments[1], arguments[2]);
+                break;
+            case SET_PROPERTY_INTEGER:
+                game.setProperty(arguments[0], arguments[1], parseInt(arguments[2]));
+                break;
+            case DEFINE_RULE_INTEGER:
+                game.defineRule(arguments[0], arguments[1]);
+                break;
+            case DEFINE_RULE_STRING:
+                game.defineRule(arguments[0], arguments[1], arguments[2]);
+                break;
+            case DEFINE_CARDS:
+                game.defineCards(arguments);
+                break;
+            case SET_PROPERTIES_STRING:
+            case SET_PROPERTIES_INTEGER: {
+                // arguments: property, card1, value1, card2, value2, ...
+                int count = (arguments.length - 1) / 2;
+                String[] cards = new String[count];
+                String[] values = new String[count];
+                for (int i = 0; i < count; i++) {
+                    cards[i] = arguments[1 + 2 * i];
+                    values[i] = arguments[2 + 2 * i];
+                }
+                if (operation == SET_PROPERTIES_STRING) {
+                    game.setProperties(arguments[0], cards, values);
+                } else {
+                    int[] ints = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        ints[i] = parseInt(values[i]);
+                    }
+                    game.setProperties(arguments[0], cards, ints);
+                }
+                break;
+            }
+            default:
+                throw new GameException("Unknown mutation operation: " + operation);
+        }
+    }
+
+    private static int arity(byte operation) {
+        switch (operation) {
+            case DEFINE_CARD:
+                return 1;
+            case DEFINE_PROPERTY:
+            case DEFINE_RULE_INTEGER:
+                return 2;
+            case SET_PROPERTY_STRING:
+            case SET_PROPERTY_INTEGER:
+            case DEFINE_RULE_STRING:
+                return 3;
+            case SET_PROPERTIES_STRING:
+            case SET_PROPERTIES_INTEGER:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private int parseInt(String value) throws GameException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new GameException("Corrupt mutation " + sequence + ", invalid integer: " + value);
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(sequence);
+        out.writeByte(operation);
+        out.writeInt(arguments.length);
+        for (String argument : arguments) {
+            out.writeUTF(argument);
+        }
+    }
+
+    static Mutation readFrom(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        byte operation = in.readByte();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt mutation, negative argument count");
+        }
+        // the count comes from the stream, so the list grows with the arguments actually read
+        List<String> arguments = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            arguments.add(in.readUTF());
+        }
+        return new Mutation(sequence, operation, arguments.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * @author Omar Zitouni
+ * Carries batches of mutations from a replication leader to a follower
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.Closeable;
+import java.util.List;
+
+public interface MutationTransport extends Closeable {
+    void send(List<Mutation> batch) throws GameException;
+
+    /**
+     * Blocks until the next batch arrives
+     *
+     * @return the batch in sequence order, or null once the leader closed the transport
+     */
+    List<Mutation> receive() throws GameException;
+}
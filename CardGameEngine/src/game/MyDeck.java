@@ -8,17 +8,102 @@ package game;
 import framework.Deck;
 import framework.GameException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-public class MyDeck implements Deck {
+public final class MyDeck implements Deck {
+
+    private static final int DECK_MAGIC = 0x4445434B; // "DECK"
+    private static final int DECK_FORMAT = 1;
 
     private final MyGame game;
     private final List<String> deckCards = new ArrayList<>();
+    // card ids of deckCards, same order
+    private int[] deckIds = new int[16];
+    // rule columns for selectBeatingCards, rebuilt when the deck or the game changed
+    private RuleKernel ruleKernel;
+    // created by the first getStatistics() call
+    private DeckStatistics statistics;
+    // value -> deck positions, per indexed property, rebuilt when the deck or the game changed
+    private final Map<String, Map<Object, BitSet>> valueIndexes = new LinkedHashMap<>();
+    private long indexModificationCount = -1;
+    private int indexSize = -1;
+    // this deck's part of the game's memory report, see account()
+    private final MyGame.DeckShare share;
+    // estimates of the rule columns and value indexes as of their last rebuild
+    private long kernelBytes;
+    private long indexBytes;
 
     public MyDeck(MyGame game) {
         this.game = game;
+        this.share = game.registerDeck(this);
+        account();
+    }
+
+    MyGame getGame() {
+        return game;
+    }
+
+    List<String> cards() {
+        return deckCards;
+    }
+
+    /**
+     * @return the card ids of the deck in deck order (a copy)
+     */
+    int[] cardIds() {
+        return Arrays.copyOf(deckIds, deckCards.size());
+    }
+
+    /**
+     * Estimated heap retained by this deck: the card list plus rule columns, value indexes and statistics
+     * Card names are shared with the game and not counted.
+     */
+    long footprintBytes() {
+        long bytes = 16 + 24 + 16 + MemoryAccount.align(deckCards.size() * MemoryAccount.REFERENCE * 5 / 4)
+                + 16 + 4L * deckIds.length + kernelBytes + indexBytes;
+        if (statistics != null) {
+            bytes += statistics.byteSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Publishes the current estimate to the game's running deck total
+     * Called after every change of the deck; statistics that grow because the game stored new values
+     * are picked up at the deck's next change.
+     */
+    private void account() {
+        share.update(footprintBytes());
+    }
+
+    /**
+     * Recomputes the estimates of the rebuilt rule columns and value indexes
+     */
+    private void derivedChanged() {
+        kernelBytes = ruleKernel == null ? 0 : ruleKernel.byteSize();
+        indexBytes = 0;
+        for (Map<Object, BitSet> index : valueIndexes.values()) {
+            indexBytes += MemoryAccount.HASH_ENTRY + MemoryAccount.HASH_MAP;
+            for (BitSet bits : index.values()) {
+                indexBytes += MemoryAccount.HASH_ENTRY + 24 + 16 + MemoryAccount.align(bits.size() / 8);
+            }
+        }
+        account();
     }
 
     /**
@@ -32,10 +117,35 @@ public class MyDeck implements Deck {
         if (cardName == null || cardName.isEmpty()) {
             throw new GameException("Card name must not be empty or null");
         }
-        if (!game.getCards().contains(cardName)) {
+        int id = game.cardId(cardName);
+        if (id < 0) {
             throw new GameException("Card " + cardName + " is not defined in the game");
         }
+        append(game.cardName(id), id);
+    }
+
+    /**
+     * Adds a resolved card to this deck without looking its name up
+     *
+     * @param card the handle of the card to add
+     * @throws GameException if the handle is null or belongs to another game
+     */
+    public void addCard(CardRef card) throws GameException {
+        game.checkCard(card);
+        append(card.getName(), card.getId());
+    }
+
+    private void append(String cardName, int id) {
+        int size = deckCards.size();
+        if (size == deckIds.length) {
+            deckIds = Arrays.copyOf(deckIds, size * 2);
+        }
+        deckIds[size] = id;
         deckCards.add(cardName);
+        if (statistics != null) {
+            statistics.cardAdded(cardName);
+        }
+        account();
     }
 
 
@@ -49,6 +159,27 @@ public class MyDeck implements Deck {
         return deckCards.toArray(new String[0]);
     }
 
+    /**
+     * Returns handles of all cards in this deck, in the order they were added
+     *
+     * @return an array of card handles
+     */
+    public CardRef[] getAllCardRefs() {
+        return refsAt(null);
+    }
+
+    /**
+     * @return the handles of the cards at the given deck positions, or of all cards if positions is null
+     */
+    private CardRef[] refsAt(int[] positions) {
+        int count = positions == null ? deckCards.size() : positions.length;
+        CardRef[] refs = new CardRef[count];
+        for (int i = 0; i < count; i++) {
+            refs[i] = game.cardRef(deckIds[positions == null ? i : positions[i]]);
+        }
+        return refs;
+    }
+
     /**
      * Returns all cards in this deck that have the given integer property
      * set to the specified value.
@@ -70,14 +201,12 @@ public class MyDeck implements Deck {
         if (!"integer".equals(type)) {
             throw new GameException("Property is not of type integer: " + propertyName);
         }
+        game.ensureLoaded(propertyName);
         List<String> matches = new ArrayList<>();
         for (String card : deckCards) {
-            Map<String, Integer> props = game.getCardIntProperties().get(card);
-            if (props != null) {
-                Integer v = props.get(propertyName);
-                if (v != null && v == value) {
-                    matches.add(card);
-                }
+            Integer v = game.getIntProperty(card, propertyName);
+            if (v != null && v == value) {
+                matches.add(card);
             }
         }
         return matches.toArray(new String[0]);
@@ -108,40 +237,320 @@ public class MyDeck implements Deck {
         if(!"string".equals(type)) {
             throw new GameException("Property is not of type string: " + propertyName);
         }
+        game.ensureLoaded(propertyName);
         List<String> matches = new ArrayList<>();
         for (String card : deckCards) {
-            Map<String, String> props = game.getCardStringProperties().get(card);
-            if (props != null) {
-                String v = props.get(propertyName);
-                if (v != null && v.equals(value)) {
-                    matches.add(card);
-                }
+            String v = game.getStringProperty(card, propertyName);
+            if (v != null && v.equals(value)) {
+                matches.add(card);
             }
         }
         return matches.toArray(new String [0]);
     }
 
 
+    /**
+     * Returns all cards in this deck that beat the opponent card, in deck order
+     * Rules are evaluated on primitive columns of the deck, built once and reused until
+     * the deck or the game changes.
+     *
+     * @param opponentCard the card to beat
+     * @return an array of winning card names (empty if none)
+     * @throws GameException if the opponent card is invalid or not defined in the game
+     */
     @Override
     public String[] selectBeatingCards(String opponentCard) throws GameException {
         if (opponentCard == null || opponentCard.isEmpty()) {
             throw new GameException("Opponent card name must not be null or empty");
         }
-        if (!game.getCards().contains(opponentCard)) {
+        if (game.cardId(opponentCard) < 0) {
             throw new GameException("Opponent card is not defined in the game: " + opponentCard);
         }
+        return selectBeatingCards(opponentCard, game);
+    }
 
-        List<String> winners = new ArrayList<>();
-        for (String card : deckCards) {
-            if (card.equals(opponentCard)) {
-                continue;
+    /**
+     * Returns handles of all cards in this deck that beat the opponent card, in deck order
+     *
+     * @param opponentCard the handle of the card to beat
+     * @return an array of winning card handles (empty if none)
+     * @throws GameException if the handle is null or belongs to another game
+     */
+    public CardRef[] selectBeatingCards(CardRef opponentCard) throws GameException {
+        game.checkCard(opponentCard);
+        return refsAt(beatingPositions(opponentCard.getName(), game));
+    }
+
+    /**
+     * Same as selectBeatingCards, but the opponent's values are read from another game with the same rules
+     */
+    String[] selectBeatingCards(String opponentCard, MyGame opponentGame) throws GameException {
+        int[] positions = beatingPositions(opponentCard, opponentGame);
+        String[] winners = new String[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            winners[i] = deckCards.get(positions[i]);
+        }
+        return winners;
+    }
+
+    private int[] beatingPositions(String opponentCard, MyGame opponentGame) throws GameException {
+        game.ensureRulesLoaded();
+        opponentGame.ensureRulesLoaded();
+        if (ruleKernel == null || !ruleKernel.isCurrent(game, deckCards.size())) {
+            ruleKernel = new RuleKernel(game, deckCards, cardIds());
+            derivedChanged();
+        }
+        return ruleKernel.selectBeating(game, opponentCard, opponentGame);
+    }
+
+    /**
+     * Returns min, max, sum, mean and histogram of every integer property and the value frequencies
+     * of every string property over the cards of this deck
+     * The first call scans the deck once, afterwards the aggregates follow addCard and values the game
+     * stores for deck cards, so reading them does not depend on the deck size.
+     *
+     * @return the live aggregates of this deck
+     * @throws GameException if pending lazily loaded values cannot be read
+     */
+    public DeckStatistics getStatistics() throws GameException {
+        if (statistics == null) {
+            statistics = game.createStatistics(deckCards);
+            account();
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the cards of this deck matching a composite query, in deck order, e.g.
+     * type = Eldrazi AND power > 10 OR color = Blue
+     * See DeckQuery for the syntax.
+     *
+     * @param expression the query
+     * @return an array of matching card names (empty if none)
+     * @throws GameException if the query is malformed or refers to unknown properties
+     */
+    public String[] query(String expression) throws GameException {
+        return DeckQuery.parse(game, expression).execute(this);
+    }
+
+    /**
+     * Same as query, returning card handles
+     */
+    public CardRef[] queryRefs(String expression) throws GameException {
+        return refsAt(DeckQuery.parse(game, expression).matchingPositions(this));
+    }
+
+    /**
+     * Builds a value index (value -> bitmap of deck positions) for a property
+     * Queries answer predicates on indexed properties from the bitmaps instead of scanning the deck.
+     * The index is kept up to date lazily: it is rebuilt on the next query after the deck or the game changed.
+     *
+     * @param propertyName the property to index
+     * @throws GameException if the property is not defined
+     */
+    public void createIndex(String propertyName) throws GameException {
+        if (propertyName == null || propertyName.isEmpty()) {
+            throw new GameException("Property name must not be empty or null");
+        }
+        if (!game.getProperties().containsKey(propertyName)) {
+            throw new GameException("Property not defined");
+        }
+        game.ensureLoaded(propertyName);
+        Map<Object, BitSet> index = buildIndex(propertyName);
+        if (indexModificationCount != game.modificationCount() || indexSize != deckCards.size()) {
+            // the other indexes are outdated, rebuild them now so all of them match the new count
+            for (Map.Entry<String, Map<Object, BitSet>> e : valueIndexes.entrySet()) {
+                if (!e.getKey().equals(propertyName)) {
+                    e.setValue(buildIndex(e.getKey()));
+                }
+            }
+        }
+        valueIndexes.put(propertyName, index);
+        indexModificationCount = game.modificationCount();
+        indexSize = deckCards.size();
+        derivedChanged();
+    }
+
+    /**
+     * @return the current value index of the property or null if it is not indexed
+     */
+    Map<Object, BitSet> valueIndex(String propertyName) {
+        if (!valueIndexes.containsKey(propertyName)) {
+            return null;
+        }
+        if (indexModificationCount != game.modificationCount() || indexSize != deckCards.size()) {
+            for (Map.Entry<String, Map<Object, BitSet>> e : valueIndexes.entrySet()) {
+                e.setValue(buildIndex(e.getKey()));
             }
-            int wins = game.compareCards(card, opponentCard);
-            if (wins > 0){
-                winners.add(card);
+            indexModificationCount = game.modificationCount();
+            indexSize = deckCards.size();
+            derivedChanged();
+        }
+        return valueIndexes.get(propertyName);
+    }
+
+    /**
+     * Called by MyGame.reload: rebuilds only the indexes of properties whose values changed
+     * and keeps the rule columns if no rule and no rule property changed
+     */
+    void reloaded(ReloadSummary summary, long previousCount, long currentCount) {
+        if (indexModificationCount == previousCount && indexSize == deckCards.size()) {
+            for (Map.Entry<String, Map<Object, BitSet>> e : valueIndexes.entrySet()) {
+                if (summary.affects(e.getKey())) {
+                    e.setValue(buildIndex(e.getKey()));
+                }
             }
+            indexModificationCount = currentCount;
+            derivedChanged();
+        }
+        if (ruleKernel == null || summary.rulesChanged()) {
+            return;
+        }
+        for (String prop : game.getIntPropertyRules().keySet()) {
+            if (summary.affects(prop)) return;
         }
-        return winners.toArray(new String[0]);
+        for (String prop : game.getStringPropertyRules().keySet()) {
+            if (summary.affects(prop)) return;
+        }
+        ruleKernel.revalidate(previousCount, currentCount, deckCards.size());
     }
-}
 
+    private Map<Object, BitSet> buildIndex(String propertyName) {
+        boolean integer = "integer".equals(game.getProperties().get(propertyName));
+        Map<Object, BitSet> index = new HashMap<>();
+        for (int i = 0; i < deckCards.size(); i++) {
+            String card = deckCards.get(i);
+            Object value = integer ? game.getIntProperty(card, propertyName) : game.getStringProperty(card, propertyName);
+            if (value != null) {
+                index.computeIfAbsent(value, v -> new BitSet()).set(i);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Saves this deck in a compact binary format
+     * Cards are stored as ids into the game's card table, delta and varint encoded,
+     * together with a fingerprint of the card table they refer to.
+     *
+     * @param path the file to write
+     * @throws GameException if the path is invalid or writing fails
+     */
+    public void saveToFile(String path) throws GameException {
+        if (path == null || path.isEmpty()) {
+            throw new GameException("path must not be null or empty");
+        }
+        int cardCount = game.cardCount();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(Paths.get(path))))) {
+            out.writeInt(DECK_MAGIC);
+            out.writeByte(DECK_FORMAT);
+            writeVarInt(out, cardCount);
+            out.writeLong(game.cardTableFingerprint(cardCount));
+            writeVarInt(out, deckCards.size());
+            int previous = 0;
+            for (int i = 0; i < deckCards.size(); i++) {
+                int id = deckIds[i];
+                int delta = id - previous;
+                writeVarInt(out, (delta << 1) ^ (delta >> 31)); // zigzag, decks are not sorted
+                previous = id;
+            }
+        } catch (IOException e) {
+            throw new GameException("Failed to save deck: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a deck saved with saveToFile
+     * The deck is accepted if the game still starts with the card table it was saved with
+     * (cards are only ever appended), in that case cards are added without per-card lookups.
+     *
+     * @param game the game the deck belongs to
+     * @param path the file to read
+     * @return the loaded deck
+     * @throws GameException if the file is malformed, was saved for another card table or I/O fails
+     */
+    public static MyDeck loadFromFile(MyGame game, String path) throws GameException {
+        if (game == null) {
+            throw new GameException("Game must not be null");
+        }
+        if (path == null || path.isEmpty()) {
+            throw new GameException("path must not be null or empty");
+        }
+        Path file = Paths.get(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long fileSize = Files.size(file);
+            if (in.readInt() != DECK_MAGIC) {
+                throw new GameException("Not a deck file: " + path);
+            }
+            int format = in.readUnsignedByte();
+            if (format != DECK_FORMAT) {
+                throw new GameException("Unsupported deck format: " + format);
+            }
+            int cardCount = readVarInt(in);
+            long fingerprint = in.readLong();
+            if (cardCount < 0) {
+                throw new GameException("Corrupt deck file, negative card count: " + cardCount);
+            }
+            if (cardCount > game.cardCount() || game.cardTableFingerprint(cardCount) != fingerprint) {
+                throw new GameException("Deck was saved for a different card table: " + path);
+            }
+            int size = readVarInt(in);
+            // every card takes at least one byte, so a larger size can only come from a corrupt file
+            long remaining = fileSize - 4 - 1 - varIntLength(cardCount) - 8 - varIntLength(size);
+            if (size < 0 || size > remaining) {
+                throw new GameException("Corrupt deck file, invalid deck size: " + size);
+            }
+            MyDeck deck = new MyDeck(game);
+            String[] loaded = new String[size];
+            int[] ids = new int[size];
+            int id = 0;
+            for (int i = 0; i < size; i++) {
+                int zigzag = readVarInt(in);
+                id += (zigzag >>> 1) ^ -(zigzag & 1);
+                if (id < 0 || id >= cardCount) {
+                    throw new GameException("Corrupt deck file, card id out of range: " + id);
+                }
+                loaded[i] = game.cardName(id);
+                ids[i] = id;
+            }
+            deck.deckCards.addAll(Arrays.asList(loaded));
+            deck.deckIds = Arrays.copyOf(ids, Math.max(16, size));
+            deck.account();
+            return deck;
+        } catch (EOFException e) {
+            throw new GameException("Truncated deck file: " + path);
+        } catch (IOException e) {
+            throw new GameException("Failed to load deck: " + e.getMessage());
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int varIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException, GameException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new GameException("Corrupt deck file, varint too long");
+    }
+}
@@ -10,22 +10,64 @@ import framework.Deck;
 import framework.GameException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.io.BufferedWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 public class MyGame implements Game {
 
+    private static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
     private final String gameName;
     private final Set<String> cards = new LinkedHashSet<>();
+    // card ids in definition order, cards are never removed so ids stay stable
+    private final ArrayList<String> cardTable = new ArrayList<>();
+    private final Map<String, Integer> cardIds = new HashMap<>();
+    // one handle per card id
+    private final ArrayList<CardRef> cardRefs = new ArrayList<>();
+    private long cardTableFingerprint = FINGERPRINT_SEED;
     private final Map<String, String> properties = new HashMap<>();
     private final Map<String, Map<String, String>> cardStringProperties = new HashMap<>();
     private final Map<String, Map<String, Integer>> cardIntProperties = new HashMap<>();
     private final Map<String, String> intPropertyRules = new HashMap<>();
     private final Map<String, Map<String, Set<String>>> stringPropertyRules = new HashMap<>();
+    // set by loadGameLazy while property values are still only indexed in the file
+    private LazyPropertyIndex lazyIndex;
+    // bumped by every change to property values or rules, lets decks drop derived data
+    private long modificationCount;
+    // values moved to native memory by moveToOffHeap, the maps above then only hold newer values;
+    // volatile because the value getters read it without the lock
+    private volatile OffHeapPropertyStore offHeapStore;
+    // set once a replication leader or follower owns the game, bulk changes would bypass its mutation log
+    private boolean replicated;
+    // newest version written per save file, see replaceFile
+    private final Map<Path, Long> savedVersions = new ConcurrentHashMap<>();
+    // one lock per save file, shared by all games of the process
+    private static final Map<Path, Object> SAVE_LOCKS = new ConcurrentHashMap<>();
+    // running memory estimate, see memoryReport()
+    private final MemoryAccount memory = new MemoryAccount();
+    // decks created for this game that are still referenced somewhere
+    private final Set<MyDeck> decks = Collections.newSetFromMap(new WeakHashMap<>());
+    // running sum of the decks' estimates, a collected deck's share is subtracted when its reference is queued
+    private final AtomicLong deckBytes = new AtomicLong();
+    private final Set<DeckShare> deckShares = new HashSet<>();
+    private final ReferenceQueue<MyDeck> collectedDecks = new ReferenceQueue<>();
+    // aggregates of decks that asked for them, updated on every stored value
+    private final Set<DeckStatistics> statistics = Collections.newSetFromMap(new WeakHashMap<>());
 
     /**
      * Fields Getters
@@ -42,14 +84,32 @@ public class MyGame implements Game {
         return properties;
     }
 
+    /**
+     * Read-only views card -> (property -> value) over all values, wherever they are stored
+     * Values moved off heap are read through, pending values of a lazily loaded game are loaded on first access.
+     * Cards without a value of that type have no entry.
+     *
+     * @throws IllegalStateException from the view if pending lazily loaded values cannot be read
+     */
     public Map<String, Map<String, String>> getCardStringProperties() {
-        return cardStringProperties;
+        return new CardValues<>("string");
     }
 
     public Map<String, Map<String, Integer>> getCardIntProperties() {
+        return new CardValues<>("integer");
+    }
+
+    /**
+     * The heap maps only, without values moved off heap or still pending in a lazy load
+     */
+    Map<String, Map<String, Integer>> heapIntValues() {
         return cardIntProperties;
     }
 
+    Map<String, Map<String, String>> heapStringValues() {
+        return cardStringProperties;
+    }
+
     public Map<String, String> getIntPropertyRules() {
         return intPropertyRules;
     }
@@ -65,8 +125,124 @@ public class MyGame implements Game {
         this.gameName = name;
     }
 
+    /**
+     * Returns the value of an integer property of a card, wherever it is stored
+     *
+     * @return the value or null if the card has no value for this property
+     */
+    public Integer getIntProperty(String cardName, String propertyName) {
+        while (true) {
+            OffHeapPropertyStore store = offHeapStore;
+            Integer value = heapInt(cardName, propertyName);
+            if (value == null && store != null) {
+                value = store.getInt(cardId(cardName), propertyName);
+            }
+            if (value != null || isStable(store)) {
+                return value;
+            }
+            // values moved between heap and native memory while reading, look again
+        }
+    }
+
+    /**
+     * @return true if the store read by a value getter is still the current, open one
+     */
+    private boolean isStable(OffHeapPropertyStore store) {
+        return offHeapStore == store && (store == null || !store.isClosed());
+    }
+
+    private Integer heapInt(String cardName, String propertyName) {
+        Map<String, Integer> map = cardIntProperties.get(cardName);
+        return map == null ? null : map.get(propertyName);
+    }
+
+    /**
+     * Returns the value of a string property of a card, wherever it is stored
+     *
+     * @return the value or null if the card has no value for this property
+     */
+    public String getStringProperty(String cardName, String propertyName) {
+        while (true) {
+            OffHeapPropertyStore store = offHeapStore;
+            String value = heapString(cardName, propertyName);
+            if (value == null && store != null) {
+                value = store.getString(cardId(cardName), propertyName);
+            }
+            if (value != null || isStable(store)) {
+                return value;
+            }
+        }
+    }
+
+    private String heapString(String cardName, String propertyName) {
+        Map<String, String> map = cardStringProperties.get(cardName);
+        return map == null ? null : map.get(propertyName);
+    }
+
+    /**
+     * Moves all property values into native memory, leaving the heap maps empty
+     * Values set afterwards are kept on the heap until the next call. The native memory
+     * stays allocated until moveToHeap() is called.
+     *
+     * @throws GameException if pending lazily loaded values cannot be read
+     */
+    public synchronized void moveToOffHeap() throws GameException {
+        ensureAllLoaded();
+        if (offHeapStore != null) {
+            moveToHeap();
+        }
+        offHeapStore = new OffHeapPropertyStore(this);
+        cardIntProperties.clear();
+        cardStringProperties.clear();
+        memory.heapValuesCleared();
+    }
+
+    /**
+     * Copies off heap values back into the heap maps and releases the native memory
+     */
+    public synchronized void moveToHeap() {
+        if (offHeapStore == null) {
+            return;
+        }
+        OffHeapPropertyStore store = offHeapStore;
+        for (int id = 0; id < store.cardCount(); id++) {
+            String card = cardTable.get(id);
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                if ("integer".equals(e.getValue())) {
+                    Integer value = store.getInt(id, e.getKey());
+                    if (value != null) storeIntProperty(card, e.getKey(), value);
+                } else {
+                    String value = store.getString(id, e.getKey());
+                    if (value != null) storeStringProperty(card, e.getKey(), value);
+                }
+            }
+        }
+        offHeapStore = null;
+        store.close();
+    }
+
+    /**
+     * Called by ReplicationLeader and ReplicationFollower, reload and CSV import are rejected from now on
+     */
+    synchronized void markReplicated() {
+        replicated = true;
+    }
+
+    synchronized boolean isReplicated() {
+        return replicated;
+    }
+
+    /**
+     * @return the native memory used for property values in bytes (0 if everything is on the heap)
+     */
+    public long offHeapBytes() {
+        OffHeapPropertyStore store = offHeapStore;
+        return store == null ? 0 : store.byteSize();
+    }
+
     /**
      * Loads a game definition from a .game file and returns a fully initialized MyGame instance
+     * Files written by saveToFileCompressed are recognized by their content and decompressed on the fly.
      *
      * @param path the file to read
      * @return the reconstructed game
@@ -77,6 +253,9 @@ public class MyGame implements Game {
             throw new GameException("path must not be null or empty");
         }
         Path p = Paths.get(path);
+        if (Files.isRegularFile(p) && CompressedGameFile.isCompressed(p)) {
+            return CompressedGameFile.read(p);
+        }
         final List<String> lines;
         try {
             lines = Files.readAllLines(p, StandardCharsets.UTF_8);
@@ -101,82 +280,376 @@ public class MyGame implements Game {
             String line = lines.get(i);
             if (line == null) continue;
             if (line.isBlank()) continue;
+            applyLine(game, line, i + 1);
+        }
+        return game;
+    }
 
-            if (line.startsWith("Card: ")) {
-                String card = line.substring("Card: ".length());
-                if (card.isEmpty()) {
-                    throw new GameException("Empty card name at line: " + (i+1));
-                }
-                game.defineCard(card);
-            } else if (line.startsWith("Property: ")) {
-                String rest = line.substring("Property: ".length());
-                String[] parts = rest.split(" \\| ", -1);
-                if (parts.length != 2) {
-                    throw new GameException("Malformed property at line: " + (i+1));
-                }
-                String prop = parts[0];
-                String type = parts[1];
-                if (prop.isEmpty() || type.isEmpty()) {
-                    throw new GameException("Empty property name/type at line: " + (i+1));
-                }
-                game.defineProperty(prop, type);
-            } else if (line.startsWith("CardProperty: ")) {
-                String rest = line.substring("CardProperty: ".length());
-                String[] parts = rest.split(" \\| ", -1);
-                if (parts.length != 3) {
-                    throw new GameException("Malformed CardProperty at line: " + (i+1));
-                }
-                String card = parts[0];
-                String prop = parts[1];
-                String value = parts[2];
-                if (card.isEmpty() || prop.isEmpty() || value.isEmpty()) {
-                    throw new GameException("Empty CardProperty token at line " + (i + 1));
-                }
-                String propType = game.properties.get(prop);
-                if (propType == null) {
-                    throw new GameException("Property not defined before at line " + (i + 1));
+    /**
+     * Brings the game in line with an edited .game file by applying only the differences
+     * New cards, properties and rules are added, values that differ are replaced or removed and
+     * rules missing from the file are removed. Cards missing from the file stay defined (card ids
+     * are stable and decks may refer to them) but lose their values, the summary lists them.
+     * Derived data of live decks is refreshed only for the properties and rules that changed.
+     * The file is parsed completely before the game is touched. Values held off heap are changed in place,
+     * new string values and values of new cards or properties are kept on the heap.
+     *
+     * @param path the edited game file
+     * @return what changed
+     * @throws GameException if the file cannot be loaded, belongs to another game, removes or retypes
+     *                       a property (use loadGame for that), or the game is replicated
+     */
+    public ReloadSummary reload(String path) throws GameException {
+        MyGame fresh = loadGame(path);
+        synchronized (this) {
+            if (replicated) {
+                throw new GameException("Cannot reload a replicated game, followers would not see the changes");
+            }
+            if (!fresh.gameName.equals(gameName)) {
+                throw new GameException("File belongs to another game: " + fresh.gameName);
+            }
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                if (!e.getValue().equals(fresh.properties.get(e.getKey()))) {
+                    throw new GameException("Reload cannot remove or change the type of property: " + e.getKey());
                 }
-                if ("integer".equals(propType)) {
-                    final int intVal;
-                    try {
-                        intVal = Integer.parseInt(value);
-                    } catch (NumberFormatException e) {
-                        throw new GameException("Invalid integer value '" + value + "' at line " + (i + 1));
+            }
+            ensureAllLoaded();
+            return applyReload(fresh);
+        }
+    }
+
+    private ReloadSummary applyReload(MyGame fresh) throws GameException {
+        long previousCount = modificationCount;
+        ReloadSummary summary = new ReloadSummary();
+
+        for (String card : fresh.cards) {
+            if (cards.add(card)) {
+                registerCardId(card);
+                summary.cardAdded(card);
+            }
+        }
+        for (String card : cards) {
+            if (!fresh.cards.contains(card)) {
+                summary.cardRetained(card);
+            }
+        }
+        for (Map.Entry<String, String> e : fresh.properties.entrySet()) {
+            if (!properties.containsKey(e.getKey())) {
+                properties.put(e.getKey(), e.getValue());
+                memory.propertyDefined(e.getKey(), "integer".equals(e.getValue()));
+                summary.propertyAdded(e.getKey());
+            }
+        }
+        reloadValues(fresh, summary);
+        reloadRules(fresh, summary);
+
+        if (!summary.isEmpty()) {
+            modificationCount++;
+            for (MyDeck deck : decks) {
+                deck.reloaded(summary, previousCount, modificationCount);
+            }
+        }
+        return summary;
+    }
+
+    private void reloadValues(MyGame fresh, ReloadSummary summary) {
+        OffHeapPropertyStore store = offHeapStore;
+        for (String card : cards) {
+            int id = cardId(card);
+            boolean changed = false;
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                String prop = e.getKey();
+                if ("integer".equals(e.getValue())) {
+                    Integer current = getIntProperty(card, prop);
+                    Integer next = fresh.getIntProperty(card, prop);
+                    if (Objects.equals(current, next)) continue;
+                    Map<String, Integer> heap = cardIntProperties.get(card);
+                    boolean onHeap = heap != null && heap.containsKey(prop);
+                    if (onHeap) {
+                        heap.remove(prop);
+                        memory.intRemoved(prop, current);
+                    } else if (current != null) {
+                        memory.offHeapValueRemoved(prop, current);
+                    }
+                    if (onHeap || store == null || !store.setInt(id, prop, next)) {
+                        if (next != null) storeIntProperty(card, prop, next);
                     }
-                    game.setProperty(card, prop, intVal);
-                } else if("string".equals(propType)) {
-                    game.setProperty(card, prop, value);
+                    if (next != null) memory.valueAdded(prop, next);
+                    reloadStatistics(card, prop, current, next);
                 } else {
-                    throw new GameException("Unknown property type for '" + prop + "' at line " + (i + 1));
+                    String current = getStringProperty(card, prop);
+                    String next = fresh.getStringProperty(card, prop);
+                    if (Objects.equals(current, next)) continue;
+                    Map<String, String> heap = cardStringProperties.get(card);
+                    boolean onHeap = heap != null && heap.containsKey(prop);
+                    if (onHeap) {
+                        heap.remove(prop);
+                        memory.stringRemoved(prop, current);
+                    } else if (current != null) {
+                        memory.offHeapValueRemoved(prop, current);
+                    }
+                    if (next != null) {
+                        storeStringProperty(card, prop, next);
+                        memory.valueAdded(prop, next);
+                    }
+                    // the heap value is in place before the off heap one disappears, readers see one of them
+                    if (!onHeap && current != null) store.clearString(id, prop);
+                    reloadStatistics(card, prop, current, next);
                 }
-            } else if (line.startsWith("GameRuleInteger: ")) {
-                String rest = line.substring("GameRuleInteger: ".length());
-                String[] parts =  rest.split(" \\| ", -1);
-                if (parts.length != 2) {
-                    throw new GameException("Malformed GameRuleInteger at line: " + (i+1));
+                summary.valueChanged(prop, card);
+                changed = true;
+            }
+            if (changed && !fresh.cards.contains(card)) {
+                summary.cardCleared(card);
+            }
+        }
+    }
+
+    private void reloadStatistics(String card, String prop, Object current, Object next) {
+        for (DeckStatistics deckStatistics : statistics) {
+            if (current != null) deckStatistics.valueRemoved(card, prop, current);
+            if (next != null) deckStatistics.valueAdded(card, prop, next);
+        }
+    }
+
+    private void reloadRules(MyGame fresh, ReloadSummary summary) throws GameException {
+        for (Iterator<Map.Entry<String, String>> it = intPropertyRules.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, String> rule = it.next();
+            if (!rule.getValue().equals(fresh.intPropertyRules.get(rule.getKey()))) {
+                it.remove();
+                memory.intRuleRemoved();
+                summary.ruleRemoved(rule.getKey() + rule.getValue());
+            }
+        }
+        for (Map.Entry<String, String> rule : fresh.intPropertyRules.entrySet()) {
+            if (!intPropertyRules.containsKey(rule.getKey())) {
+                defineRule(rule.getKey(), rule.getValue());
+                summary.ruleAdded(rule.getKey() + rule.getValue());
+            }
+        }
+
+        for (Iterator<Map.Entry<String, Map<String, Set<String>>>> props = stringPropertyRules.entrySet().iterator(); props.hasNext(); ) {
+            Map.Entry<String, Map<String, Set<String>>> prop = props.next();
+            Map<String, Set<String>> freshWinners = fresh.stringPropertyRules.get(prop.getKey());
+            for (Iterator<Map.Entry<String, Set<String>>> winners = prop.getValue().entrySet().iterator(); winners.hasNext(); ) {
+                Map.Entry<String, Set<String>> winner = winners.next();
+                Set<String> freshLosers = freshWinners == null ? null : freshWinners.get(winner.getKey());
+                for (Iterator<String> losers = winner.getValue().iterator(); losers.hasNext(); ) {
+                    String loser = losers.next();
+                    if (freshLosers == null || !freshLosers.contains(loser)) {
+                        losers.remove();
+                        memory.stringRuleRemoved(loser);
+                        summary.ruleRemoved(prop.getKey() + ":" + winner.getKey() + ">" + loser);
+                    }
                 }
-                String prop = parts[0];
-                String op = parts[1];
-                if (prop.isEmpty() || op.isEmpty()) {
-                    throw new GameException("Empty integer rule token at line " + (i + 1));
+                if (winner.getValue().isEmpty()) {
+                    winners.remove();
+                    memory.stringRuleWinnerRemoved(winner.getKey());
                 }
-                game.defineRule(prop, op);
-            } else if (line.startsWith("GameRuleString: ")) {
-                String rest = line.substring("GameRuleString: ".length());
-                String[] parts = rest.split(" \\| ", -1);
-                if (parts.length != 3) throw new GameException("Malformed GameRuleString line at " + (i + 1));
-                String prop   = parts[0];
-                String winner = parts[1];
-                String loser  = parts[2];
-                if (prop.isEmpty() || winner.isEmpty() || loser.isEmpty()) {
-                    throw new GameException("Empty string rule token at line " + (i + 1));
+            }
+            if (prop.getValue().isEmpty()) {
+                props.remove();
+                memory.stringRulePropertyRemoved();
+            }
+        }
+        for (Map.Entry<String, Map<String, Set<String>>> prop : fresh.stringPropertyRules.entrySet()) {
+            Map<String, Set<String>> winners = stringPropertyRules.get(prop.getKey());
+            for (Map.Entry<String, Set<String>> winner : prop.getValue().entrySet()) {
+                Set<String> losers = winners == null ? null : winners.get(winner.getKey());
+                for (String loser : winner.getValue()) {
+                    if (losers == null || !losers.contains(loser)) {
+                        defineRule(prop.getKey(), winner.getKey(), loser);
+                        summary.ruleAdded(prop.getKey() + ":" + winner.getKey() + ">" + loser);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a game on the I/O executor, the calling thread is not blocked
+     *
+     * @param path the file to read
+     * @return a future completing with the game, or exceptionally with the GameException of loadGame
+     */
+    public static CompletableFuture<MyGame> loadGameAsync(String path) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return loadGame(path);
+            } catch (GameException e) {
+                throw new CompletionException(e);
+            }
+        }, IoExecutor.INSTANCE);
+    }
+
+    /**
+     * Loads a game definition lazily: cards, properties and rules are loaded right away,
+     * property values are only indexed by byte offset and read from the file the first time
+     * a query or rule comparison needs that property
+     * getCardIntProperties()/getCardStringProperties() load all pending values when they are first used.
+     * Values of not yet materialized properties are validated when they are read.
+     *
+     * Compressed files cannot be indexed by offset and are loaded completely.
+     *
+     * @param path the file to read, it must not change while values are still pending
+     * @return the game with property values pending
+     * @throws GameException if the file is malformed or I/O fails
+     */
+    public static MyGame loadGameLazy(String path) throws GameException {
+        if (path == null || path.isEmpty()) {
+            throw new GameException("path must not be null or empty");
+        }
+        Path p = Paths.get(path);
+        if (Files.isRegularFile(p) && CompressedGameFile.isCompressed(p)) {
+            return CompressedGameFile.read(p);
+        }
+        return LazyPropertyIndex.load(p);
+    }
+
+    void attachLazyIndex(LazyPropertyIndex index) {
+        this.lazyIndex = index;
+    }
+
+    /**
+     * Reads the values of a lazily loaded property from the game file if that has not happened yet
+     * Takes the game lock, read paths like getMatchingCards and compareCards call it too.
+     *
+     * @param propertyName the property about to be used
+     * @throws GameException if the pending values cannot be read or are invalid
+     */
+    synchronized void ensureLoaded(String propertyName) throws GameException {
+        if (lazyIndex == null || !lazyIndex.isPending(propertyName)) {
+            return;
+        }
+        lazyIndex.materialize(this, propertyName);
+        if (lazyIndex.isEmpty()) {
+            lazyIndex = null;
+        }
+    }
+
+    /**
+     * Reads the pending values of every property that has a rule
+     */
+    synchronized void ensureRulesLoaded() throws GameException {
+        if (lazyIndex == null) {
+            return;
+        }
+        for (String prop : intPropertyRules.keySet().toArray(new String[0])) {
+            ensureLoaded(prop);
+        }
+        for (String prop : stringPropertyRules.keySet().toArray(new String[0])) {
+            ensureLoaded(prop);
+        }
+    }
+
+    /**
+     * @return a counter that changes whenever property values, properties or rules change
+     */
+    long modificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * @return a counter that changes with every change that saveToFile would write, including new cards
+     */
+    synchronized long version() {
+        return modificationCount + cardTable.size();
+    }
+
+    /**
+     * Reads all pending property values of a lazily loaded game
+     */
+    synchronized void ensureAllLoaded() throws GameException {
+        if (lazyIndex == null) {
+            return;
+        }
+        for (String propertyName : lazyIndex.pendingProperties()) {
+            ensureLoaded(propertyName);
+        }
+    }
+
+    /**
+     * Applies one line of a .game file (everything but the "Game: " header) to the game
+     *
+     * @param game       the game being loaded
+     * @param line       the non-blank line
+     * @param lineNumber the 1-based line number used in error messages
+     * @throws GameException if the line is malformed or rejected by the game
+     */
+    static void applyLine(MyGame game, String line, int lineNumber) throws GameException {
+        if (line.startsWith("Card: ")) {
+            String card = line.substring("Card: ".length());
+            if (card.isEmpty()) {
+                throw new GameException("Empty card name at line: " + lineNumber);
+            }
+            game.defineCard(card);
+        } else if (line.startsWith("Property: ")) {
+            String rest = line.substring("Property: ".length());
+            String[] parts = rest.split(" \\| ", -1);
+            if (parts.length != 2) {
+                throw new GameException("Malformed property at line: " + lineNumber);
+            }
+            String prop = parts[0];
+            String type = parts[1];
+            if (prop.isEmpty() || type.isEmpty()) {
+                throw new GameException("Empty property name/type at line: " + lineNumber);
+            }
+            game.defineProperty(prop, type);
+        } else if (line.startsWith("CardProperty: ")) {
+            String rest = line.substring("CardProperty: ".length());
+            String[] parts = rest.split(" \\| ", -1);
+            if (parts.length != 3) {
+                throw new GameException("Malformed CardProperty at line: " + lineNumber);
+            }
+            String card = parts[0];
+            String prop = parts[1];
+            String value = parts[2];
+            if (card.isEmpty() || prop.isEmpty() || value.isEmpty()) {
+                throw new GameException("Empty CardProperty token at line " + lineNumber);
+            }
+            String propType = game.properties.get(prop);
+            if (propType == null) {
+                throw new GameException("Property not defined before at line " + lineNumber);
+            }
+            if ("integer".equals(propType)) {
+                final int intVal;
+                try {
+                    intVal = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new GameException("Invalid integer value '" + value + "' at line " + lineNumber);
                 }
-                game.defineRule(prop, winner, loser);
+                game.setProperty(card, prop, intVal);
+            } else if("string".equals(propType)) {
+                game.setProperty(card, prop, value);
             } else {
-                throw new GameException("Unknown line prefix at " + (i + 1) + ": " + line);
+                throw new GameException("Unknown property type for '" + prop + "' at line " + lineNumber);
+            }
+        } else if (line.startsWith("GameRuleInteger: ")) {
+            String rest = line.substring("GameRuleInteger: ".length());
+            String[] parts =  rest.split(" \\| ", -1);
+            if (parts.length != 2) {
+                throw new GameException("Malformed GameRuleInteger at line: " + lineNumber);
+            }
+            String prop = parts[0];
+            String op = parts[1];
+            if (prop.isEmpty() || op.isEmpty()) {
+                throw new GameException("Empty integer rule token at line " + lineNumber);
             }
+            game.defineRule(prop, op);
+        } else if (line.startsWith("GameRuleString: ")) {
+            String rest = line.substring("GameRuleString: ".length());
+            String[] parts = rest.split(" \\| ", -1);
+            if (parts.length != 3) throw new GameException("Malformed GameRuleString line at " + lineNumber);
+            String prop   = parts[0];
+            String winner = parts[1];
+            String loser  = parts[2];
+            if (prop.isEmpty() || winner.isEmpty() || loser.isEmpty()) {
+                throw new GameException("Empty string rule token at line " + lineNumber);
+            }
+            game.defineRule(prop, winner, loser);
+        } else {
+            throw new GameException("Unknown line prefix at " + lineNumber + ": " + line);
         }
-        return game;
     }
 
     /**
@@ -186,13 +659,14 @@ public class MyGame implements Game {
      * @throws GameException if the name is invalid or the card already exists
      */
     @Override
-    public void defineCard(String name) throws GameException {
+    public synchronized void defineCard(String name) throws GameException {
         if (name == null || name.isEmpty()) {
             throw new GameException("Card name must not be null or empty!");
         }
         if (!cards.add(name)) {
             throw new GameException("Card name already exists!");
         }
+        registerCardId(name);
     }
 
     /**
@@ -203,7 +677,7 @@ public class MyGame implements Game {
      * @throws GameException if arguments are invalid or property already exists
      */
     @Override
-    public void defineProperty(String name, String type) throws GameException {
+    public synchronized void defineProperty(String name, String type) throws GameException {
         if (name == null || name.isEmpty()) {
             throw new GameException("Property name must not be null or empty!");
         }
@@ -217,6 +691,8 @@ public class MyGame implements Game {
             throw new GameException("Property already defined: " + name);
         }
         properties.put(name, type);
+        memory.propertyDefined(name, "integer".equals(type));
+        modificationCount++;
     }
 
     /**
@@ -229,7 +705,7 @@ public class MyGame implements Game {
      *                       or the property is already set for this card
      */
     @Override
-    public void setProperty(String cardName, String propertyName, String value) throws GameException {
+    public synchronized void setProperty(String cardName, String propertyName, String value) throws GameException {
         if (cardName == null || cardName.isEmpty()) {
             throw new GameException("Card name must not be null or empty!");
         }
@@ -249,15 +725,11 @@ public class MyGame implements Game {
         if (!"string".equals(type)) {
             throw new GameException("Property is not of type string: " + type);
         }
-        Map<String, String> map = cardStringProperties.get(cardName);
-        if (map == null) {
-            map = new HashMap<>();
-            cardStringProperties.put(cardName, map);
-        }
-        if (map.containsKey(propertyName)) {
+        ensureLoaded(propertyName);
+        if (getStringProperty(cardName, propertyName) != null) {
             throw new GameException("Property already set for card: " + cardName + "." + propertyName);
         }
-        map.put(propertyName, value);
+        putStringProperty(cardName, propertyName, value);
     }
 
     /**
@@ -270,7 +742,7 @@ public class MyGame implements Game {
      *                       or the property is already set for this card
      */
     @Override
-    public void setProperty(String cardName, String propertyName, int value) throws GameException {
+    public synchronized void setProperty(String cardName, String propertyName, int value) throws GameException {
         if (cardName == null || cardName.isEmpty()) {
             throw new GameException("Card name must not be null or empty");
         }
@@ -287,15 +759,347 @@ public class MyGame implements Game {
         if (!"integer".equals(type)) {
             throw new GameException("Property is not of type integer: " + propertyName);
         }
-        Map<String, Integer> map = cardIntProperties.get(cardName);
-        if (map == null) {
-            map = new HashMap<>();
-            cardIntProperties.put(cardName, map);
+        ensureLoaded(propertyName);
+        if (getIntProperty(cardName, propertyName) != null) {
+            throw new GameException("Property already set for card: " + cardName + "." + propertyName);
+        }
+        putIntProperty(cardName, propertyName, value);
+    }
+
+    /**
+     * Defines many cards in one call
+     * The whole batch is validated before any card is added, so either all cards are defined or none
+     *
+     * @param names the names of the cards to define
+     * @throws GameException if the array is null, a name is invalid, repeated in the batch,
+     *                       or the card already exists
+     */
+    @Override
+    public synchronized void defineCards(String[] names) throws GameException {
+        if (names == null) {
+            throw new GameException("Card names must not be null!");
+        }
+        Set<String> batch = new HashSet<>(capacityFor(names.length));
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            if (name == null || name.isEmpty()) {
+                throw new GameException("Card name must not be null or empty at index " + i);
+            }
+            if (cardIds.containsKey(name) || !batch.add(name)) {
+                throw new GameException("Card name already exists: " + name);
+            }
+        }
+        cardTable.ensureCapacity(cardTable.size() + names.length);
+        cardRefs.ensureCapacity(cardRefs.size() + names.length);
+        cards.addAll(Arrays.asList(names));
+        for (String name : names) {
+            registerCardId(name);
+        }
+    }
+
+    /**
+     * Sets a string property for many cards in one call
+     * The property is looked up once and the whole batch is validated before any value is stored
+     *
+     * @param propertyName the property to assign
+     * @param cardNames    the cards to update
+     * @param values       the values, values[i] belongs to cardNames[i]
+     * @throws GameException if the arrays are null or differ in length, the property is not a string property,
+     *                       a card/value is invalid, or a property is already set (or repeated in the batch)
+     */
+    @Override
+    public synchronized void setProperties(String propertyName, String[] cardNames, String[] values) throws GameException {
+        checkBatch(propertyName, "string", cardNames, values == null ? -1 : values.length);
+        BitSet batch = new BitSet(cardTable.size());
+        for (int i = 0; i < cardNames.length; i++) {
+            checkBatchCard(cardNames[i], i, batch, propertyName, cardStringProperties);
+            if (values[i] == null || values[i].isEmpty()) {
+                throw new GameException("Value must not be null or empty at index " + i);
+            }
+        }
+        for (int i = 0; i < cardNames.length; i++) {
+            storeStringProperty(cardNames[i], propertyName, values[i]);
+            memory.valueAdded(propertyName, values[i]);
+            for (DeckStatistics deckStatistics : statistics) {
+                deckStatistics.valueAdded(cardNames[i], propertyName, values[i]);
+            }
+        }
+        if (cardNames.length > 0) {
+            modificationCount++;
+        }
+    }
+
+    /**
+     * Sets an integer property for many cards in one call
+     * The property is looked up once and the whole batch is validated before any value is stored
+     *
+     * @param propertyName the property to assign
+     * @param cardNames    the cards to update
+     * @param values       the values, values[i] belongs to cardNames[i]
+     * @throws GameException if the arrays are null or differ in length, the property is not an integer property,
+     *                       a card is invalid, or a property is already set (or repeated in the batch)
+     */
+    @Override
+    public synchronized void setProperties(String propertyName, String[] cardNames, int[] values) throws GameException {
+        checkBatch(propertyName, "integer", cardNames, values == null ? -1 : values.length);
+        BitSet batch = new BitSet(cardTable.size());
+        for (int i = 0; i < cardNames.length; i++) {
+            checkBatchCard(cardNames[i], i, batch, propertyName, cardIntProperties);
+        }
+        for (int i = 0; i < cardNames.length; i++) {
+            storeIntProperty(cardNames[i], propertyName, values[i]);
+            memory.valueAdded(propertyName, values[i]);
+            for (DeckStatistics deckStatistics : statistics) {
+                deckStatistics.valueAdded(cardNames[i], propertyName, values[i]);
+            }
+        }
+        if (cardNames.length > 0) {
+            modificationCount++;
+        }
+    }
+
+    private void checkBatch(String propertyName, String expectedType, String[] cardNames, int valueCount) throws GameException {
+        if (propertyName == null || propertyName.isEmpty()) {
+            throw new GameException("Property name must not be null or empty!");
+        }
+        if (cardNames == null || valueCount < 0) {
+            throw new GameException("Card names and values must not be null!");
+        }
+        if (cardNames.length != valueCount) {
+            throw new GameException("Card names and values must have the same length!");
+        }
+        String type = properties.get(propertyName);
+        if (type == null) {
+            throw new GameException("Property not defined: " + propertyName);
+        }
+        if (!expectedType.equals(type)) {
+            throw new GameException("Property is not of type " + expectedType + ": " + propertyName);
         }
-        if (map.containsKey(propertyName)) {
+        ensureLoaded(propertyName);
+    }
+
+    /**
+     * One id lookup and one value map lookup per card, repeated cards are found by id
+     */
+    private void checkBatchCard(String cardName, int index, BitSet batch, String propertyName,
+                                Map<String, ? extends Map<String, ?>> heapValues) throws GameException {
+        if (cardName == null || cardName.isEmpty()) {
+            throw new GameException("Card name must not be null or empty at index " + index);
+        }
+        Integer id = cardIds.get(cardName);
+        if (id == null) {
+            throw new GameException("Card not defined: " + cardName);
+        }
+        Map<String, ?> values = heapValues.get(cardName);
+        OffHeapPropertyStore store = offHeapStore;
+        if (batch.get(id) || values != null && values.containsKey(propertyName)
+                || store != null && store.hasValue(id, propertyName)) {
             throw new GameException("Property already set for card: " + cardName + "." + propertyName);
         }
+        batch.set(id);
+    }
+
+    private void registerCardId(String name) {
+        cardIds.put(name, cardTable.size());
+        cardRefs.add(new CardRef(this, cardTable.size(), name));
+        cardTable.add(name);
+        cardTableFingerprint = nextFingerprint(cardTableFingerprint, name);
+        memory.cardDefined(name);
+    }
+
+    private static long nextFingerprint(long fingerprint, String name) {
+        return (fingerprint ^ name.hashCode()) * FINGERPRINT_PRIME;
+    }
+
+    /**
+     * @return the id of a card (its position in definition order) or -1 if the card is not defined
+     */
+    int cardId(String cardName) {
+        Integer id = cardIds.get(cardName);
+        return id == null ? -1 : id;
+    }
+
+    String cardName(int id) {
+        return cardTable.get(id);
+    }
+
+    CardRef cardRef(int id) {
+        return cardRefs.get(id);
+    }
+
+    /**
+     * Resolves a card name once into its handle
+     *
+     * @param cardName the name of the card
+     * @return the game's handle of the card
+     * @throws GameException if the name is null/empty or the card is not defined
+     */
+    public CardRef resolveCard(String cardName) throws GameException {
+        if (cardName == null || cardName.isEmpty()) {
+            throw new GameException("Card name must not be empty or null");
+        }
+        Integer id = cardIds.get(cardName);
+        if (id == null) {
+            throw new GameException("Card not defined: " + cardName);
+        }
+        return cardRefs.get(id);
+    }
+
+    /**
+     * @throws GameException if the handle is null or belongs to another game
+     */
+    void checkCard(CardRef card) throws GameException {
+        if (card == null) {
+            throw new GameException("Card must not be null");
+        }
+        if (card.getGame() != this) {
+            throw new GameException("Card belongs to another game: " + card.getName());
+        }
+    }
+
+    int cardCount() {
+        return cardTable.size();
+    }
+
+    /**
+     * Fingerprint of the first count card names, identifies the card table a set of ids belongs to
+     */
+    long cardTableFingerprint(int count) {
+        if (count == cardTable.size()) {
+            return cardTableFingerprint;
+        }
+        long fingerprint = FINGERPRINT_SEED;
+        for (int i = 0; i < count; i++) {
+            fingerprint = nextFingerprint(fingerprint, cardTable.get(i));
+        }
+        return fingerprint;
+    }
+
+    private static int capacityFor(int size) {
+        return (int) Math.min(Integer.MAX_VALUE, size * 4L / 3 + 1);
+    }
+
+    /**
+     * Stores a string value without validation; callers must have checked card, property and duplicates
+     */
+    synchronized void putStringProperty(String cardName, String propertyName, String value) {
+        storeStringProperty(cardName, propertyName, value);
+        memory.valueAdded(propertyName, value);
+        modificationCount++;
+        for (DeckStatistics deckStatistics : statistics) {
+            deckStatistics.valueAdded(cardName, propertyName, value);
+        }
+    }
+
+    /**
+     * Stores an integer value without validation; callers must have checked card, property and duplicates
+     */
+    synchronized void putIntProperty(String cardName, String propertyName, int value) {
+        storeIntProperty(cardName, propertyName, value);
+        memory.valueAdded(propertyName, value);
+        modificationCount++;
+        for (DeckStatistics deckStatistics : statistics) {
+            deckStatistics.valueAdded(cardName, propertyName, value);
+        }
+    }
+
+    private void storeStringProperty(String cardName, String propertyName, String value) {
+        Map<String, String> map = cardStringProperties.get(cardName);
+        boolean newMap = map == null;
+        if (newMap) {
+            map = new HashMap<>(4);
+            cardStringProperties.put(cardName, map);
+        }
+        map.put(propertyName, value);
+        memory.stringStored(newMap, value);
+    }
+
+    private void storeIntProperty(String cardName, String propertyName, int value) {
+        Map<String, Integer> map = cardIntProperties.get(cardName);
+        boolean newMap = map == null;
+        if (newMap) {
+            map = new HashMap<>(4);
+            cardIntProperties.put(cardName, map);
+        }
         map.put(propertyName, value);
+        memory.intStored(newMap, value);
+    }
+
+    /**
+     * Called by every MyDeck created for this game, the game does not keep decks alive
+     *
+     * @return the deck's entry in the running deck estimate
+     */
+    synchronized DeckShare registerDeck(MyDeck deck) {
+        dropCollectedDecks();
+        decks.add(deck);
+        DeckShare share = new DeckShare(deck, collectedDecks, deckBytes);
+        deckShares.add(share);
+        return share;
+    }
+
+    /**
+     * A deck's part of the running deck estimate, only written by the deck itself
+     */
+    static final class DeckShare extends WeakReference<MyDeck> {
+        private final AtomicLong total;
+        private volatile long bytes;
+
+        private DeckShare(MyDeck deck, ReferenceQueue<MyDeck> queue, AtomicLong total) {
+            super(deck, queue);
+            this.total = total;
+        }
+
+        /**
+         * Replaces the deck's estimate, lock free so decks can update it on every change
+         */
+        void update(long newBytes) {
+            long delta = newBytes - bytes;
+            if (delta != 0) {
+                bytes = newBytes;
+                total.addAndGet(delta);
+            }
+        }
+    }
+
+    private void dropCollectedDecks() {
+        Reference<? extends MyDeck> collected;
+        while ((collected = collectedDecks.poll()) != null) {
+            DeckShare share = (DeckShare) collected;
+            if (deckShares.remove(share)) {
+                deckBytes.addAndGet(-share.bytes);
+            }
+        }
+    }
+
+    /**
+     * Builds the aggregates of a deck's cards and keeps them updated from now on
+     */
+    synchronized DeckStatistics createStatistics(List<String> deckCards) throws GameException {
+        ensureAllLoaded();
+        DeckStatistics deckStatistics = new DeckStatistics(this, deckCards);
+        statistics.add(deckStatistics);
+        return deckStatistics;
+    }
+
+    /**
+     * @return the decks of this game that are still reachable
+     */
+    synchronized List<MyDeck> liveDecks() {
+        return new ArrayList<>(decks);
+    }
+
+    /**
+     * Returns the estimated heap used by this game and its live decks, by structure
+     * The game's part is maintained incrementally on every change, every deck keeps its share of the
+     * deck total up to date itself, so the report does not visit cards or decks.
+     *
+     * @return the current estimate
+     */
+    public synchronized MemoryReport memoryReport() {
+        dropCollectedDecks();
+        return new MemoryReport(gameName, memory.cardBytes, memory.intPropertyBytes(), memory.stringPropertyBytes(),
+                memory.ruleBytes, deckBytes.get(), deckShares.size(), offHeapBytes(), memory.cardinalities(properties.keySet()));
     }
 
     /**
@@ -310,7 +1114,7 @@ public class MyGame implements Game {
      *                       or a rule for this property already exists
      */
     @Override
-    public void defineRule(String propertyName, String operation) throws GameException {
+    public synchronized void defineRule(String propertyName, String operation) throws GameException {
         if (propertyName == null || propertyName.isEmpty()) {
             throw new GameException("Property name must not be null or empty!");
         }
@@ -327,7 +1131,9 @@ public class MyGame implements Game {
         if (!"integer".equals(type)) {
             throw new GameException("Property is not of type integer: " + propertyName);
         }
-        intPropertyRules.put(propertyName, operation);
+        String previous = intPropertyRules.put(propertyName, operation);
+        memory.intRuleDefined(previous != null);
+        modificationCount++;
     }
 
     /**
@@ -342,7 +1148,7 @@ public class MyGame implements Game {
      *                       or the identical rule already exists
      */
     @Override
-    public void defineRule(String propertyName, String winningName, String losingName) throws GameException {
+    public synchronized void defineRule(String propertyName, String winningName, String losingName) throws GameException {
         if (propertyName == null || propertyName.isEmpty()) {
             throw new GameException("Property name must not be null or empty");
         }
@@ -360,12 +1166,14 @@ public class MyGame implements Game {
             throw new GameException("Property is not of type string: " + propertyName);
         }
         Map<String, Set<String>> winnersMap = stringPropertyRules.get(propertyName);
-        if (winnersMap == null) {
+        boolean newProperty = winnersMap == null;
+        if (newProperty) {
             winnersMap = new HashMap<>();
             stringPropertyRules.put(propertyName, winnersMap);
         }
         Set<String> losers = winnersMap.get(winningName);
-        if (losers == null) {
+        boolean newWinner = losers == null;
+        if (newWinner) {
             losers = new HashSet<>();
             winnersMap.put(winningName, losers);
         }
@@ -373,6 +1181,8 @@ public class MyGame implements Game {
             throw new GameException("Duplicate string rule for property: " + propertyName + " (" + winningName + " > " + losingName + ")");
         }
         losers.add(losingName);
+        memory.stringRuleDefined(newProperty, newWinner, winningName, losingName);
+        modificationCount++;
     }
 
     /**
@@ -466,72 +1276,287 @@ public class MyGame implements Game {
      */
     @Override
     public void saveToFile() throws GameException {
-        // Default directory "games" at project root
-        Path dir = Paths.get("games");
-        try {
-            if (!Files.exists(dir)) {
-                Files.createDirectories(dir);
-            }
-            Path p = dir.resolve(gameName + ".game");
-            try(BufferedWriter out = Files.newBufferedWriter(p, StandardCharsets.UTF_8)) {
-                String nl = System.lineSeparator();
-                // 1) Game header
-                out.write("Game: " + gameName + nl);
-                // 2) Cards
-                for (String card : cards) {
-                    out.write("Card: " + card + nl);
+        Snapshot snapshot = snapshot();
+        replaceFile(saveTarget(), snapshot.version, file -> writeLines(file, snapshot.lines));
+    }
+
+    /**
+     * Saves the game like saveToFile, but as games/<name>.gamez in independently deflated blocks
+     * Blocks are compressed in parallel; loadGame reads the file back.
+     *
+     * @throws GameException if writing fails
+     */
+    public void saveToFileCompressed() throws GameException {
+        Path target = Paths.get("games").resolve(gameName + CompressedGameFile.EXTENSION);
+        Snapshot snapshot = snapshot();
+        replaceFile(target, snapshot.version, file -> CompressedGameFile.write(file, snapshot.lines));
+    }
+
+    /**
+     * Saves the game on the I/O executor
+     * The content is captured on the calling thread before the call returns, later changes are not
+     * part of this save and do not wait for the write.
+     *
+     * @return a future completing when the file is written, or exceptionally with a GameException
+     * @throws GameException if pending lazily loaded values cannot be read
+     */
+    public CompletableFuture<Void> saveToFileAsync() throws GameException {
+        Snapshot snapshot = snapshot();
+        Path target = saveTarget();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                replaceFile(target, snapshot.version, file -> writeLines(file, snapshot.lines));
+            } catch (GameException e) {
+                throw new CompletionException(e);
+            }
+        }, IoExecutor.INSTANCE);
+    }
+
+    /**
+     * @return the file saveToFile writes, games/<name>.game relative to the working directory
+     */
+    Path saveTarget() {
+        return Paths.get("games").resolve(gameName + ".game");
+    }
+
+    /**
+     * The lines of the .game file together with the version they were taken at
+     */
+    static final class Snapshot {
+        final long version;
+        final List<String> lines;
+
+        private Snapshot(long version, List<String> lines) {
+            this.version = version;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Captures lines and version in one step under the game's lock
+     */
+    synchronized Snapshot snapshot() throws GameException {
+        List<String> lines = snapshotLines();
+        return new Snapshot(version(), lines);
+    }
+
+    /**
+     * Captures the lines of the .game file under the game's lock
+     * Only this copy is taken while holding the lock, writing it out does not block mutations.
+     *
+     * @return all lines in file order, without line separators
+     * @throws GameException if pending lazily loaded values cannot be read
+     */
+    synchronized List<String> snapshotLines() throws GameException {
+        ensureAllLoaded();
+        List<String> lines = new ArrayList<>(1 + cards.size() * (1 + properties.size()) + properties.size());
+        // 1) Game header
+        lines.add("Game: " + gameName);
+        // 2) Cards
+        for (String card : cards) {
+            lines.add("Card: " + card);
+        }
+        // 3) Properties
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            lines.add("Property: " + e.getKey() + " | " + e.getValue());
+        }
+        // 4) CardProperty
+        // Integers
+        for (String card : cards) {
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                if (!"integer".equals(e.getValue())) continue;
+                Integer value = getIntProperty(card, e.getKey());
+                if (value != null) {
+                    lines.add("CardProperty: " + card + " | " + e.getKey() + " | " + value);
                 }
-                // 3) Properties
-                for (Map.Entry<String, String> e : properties.entrySet()) {
-                    out.write("Property: " + e.getKey() + " | " + e.getValue() + nl);
+            }
+        }
+        // Strings
+        for (String card : cards) {
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                if (!"string".equals(e.getValue())) continue;
+                String value = getStringProperty(card, e.getKey());
+                if (value != null) {
+                    lines.add("CardProperty: " + card + " | " + e.getKey() + " | " + value);
                 }
-                // 4) CardProperty
-                // Integers
-                for (String card : cards) {
-                    Map<String, Integer> map = cardIntProperties.get(card);
-                    if (map != null) {
-                        for (Map.Entry<String, Integer> e : map.entrySet()) {
-                            out.write("CardProperty: " + card + " | " + e.getKey() + " | " + e.getValue() + nl);
+            }
+        }
+        // 5) Integer rules
+        for (Map.Entry<String, String> e : intPropertyRules.entrySet()) {
+            lines.add("GameRuleInteger: " + e.getKey() + " | " + e.getValue());
+        }
+
+        // 6) String rules
+        for (Map.Entry<String, Map<String, Set<String>>> e : stringPropertyRules.entrySet()) {
+            String prop = e.getKey();
+            Map<String, Set<String>> winners = e.getValue();
+            if (winners != null) {
+                for (Map.Entry<String, Set<String>> w : winners.entrySet()) {
+                    String winner = w.getKey();
+                    Set<String> losers = w.getValue();
+                    if (losers != null) {
+                        for (String loser : losers) {
+                            lines.add("GameRuleString: " + prop + " | " + winner + " | " + loser);
                         }
                     }
                 }
-                // Strings
-                for (String card : cards) {
-                    Map<String, String> map = cardStringProperties.get(card);
-                    if (map != null) {
-                        for (Map.Entry<String, String> e : map.entrySet()) {
-                            out.write("CardProperty: " + card + " | " + e.getKey() + " | " + e.getValue() + nl);
-                        }
-                    }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the content of a save to a file
+     */
+    interface FileContent {
+        void writeTo(Path file) throws IOException, GameException;
+    }
+
+    /**
+     * Writes a snapshot to a fresh temporary file next to the target and moves it into place,
+     * so a crash during a save never leaves a half written game behind.
+     * Saves to the same file are serialized, and a snapshot older than the one this game already
+     * wrote there is dropped, so a slow save can not replace a newer one.
+     *
+     * @param target  the file to replace
+     * @param version the version() the content was taken at
+     */
+    void replaceFile(Path target, long version, FileContent content) throws GameException {
+        Path file = target.toAbsolutePath().normalize();
+        synchronized (SAVE_LOCKS.computeIfAbsent(file, f -> new Object())) {
+            Long saved = savedVersions.get(file);
+            if (saved != null && saved > version) {
+                return;
+            }
+            try {
+                Path dir = file.getParent();
+                if (!Files.exists(dir)) {
+                    Files.createDirectories(dir);
+                }
+                Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+                try {
+                    content.writeTo(temp);
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
                 }
-                // 5) Integer rules
-                for (Map.Entry<String, String> e : intPropertyRules.entrySet()) {
-                    out.write("GameRuleInteger: " + e.getKey() + " | " + e.getValue() + nl);
+            } catch (IOException e) {
+                throw new GameException("Failed to save file: " + e.getMessage());
+            }
+            savedVersions.put(file, version);
+        }
+    }
+
+    /**
+     * Writes the lines of a snapshot, one per line
+     */
+    static void writeLines(Path file, List<String> lines) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            String nl = System.lineSeparator();
+            for (String line : lines) {
+                out.write(line);
+                out.write(nl);
+            }
+        }
+    }
+
+    /**
+     * Map view behind getCardIntProperties/getCardStringProperties, every read goes through
+     * getIntProperty/getStringProperty so heap and off heap values look the same
+     */
+    private final class CardValues<V> extends AbstractMap<String, Map<String, V>> {
+        private final String type;
+
+        CardValues(String type) {
+            this.type = type;
+        }
+
+        @Override
+        public Map<String, V> get(Object card) {
+            if (!(card instanceof String) || !cards.contains(card)) {
+                return null;
+            }
+            try {
+                ensureAllLoaded();
+            } catch (GameException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            Map<String, V> values = new LinkedHashMap<>();
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                if (!type.equals(e.getValue())) continue;
+                Object value = "integer".equals(type)
+                        ? getIntProperty((String) card, e.getKey())
+                        : getStringProperty((String) card, e.getKey());
+                if (value != null) {
+                    @SuppressWarnings("unchecked")
+                    V typed = (V) value;
+                    values.put(e.getKey(), typed);
                 }
+            }
+            return values.isEmpty() ? null : Collections.unmodifiableMap(values);
+        }
+
+        @Override
+        public boolean containsKey(Object card) {
+            return get(card) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Map<String, V>>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Map<String, V>>> iterator() {
+                    Iterator<String> names = cards.iterator();
+                    return new Iterator<>() {
+                        private Entry<String, Map<String, V>> next = advance();
 
-                // 6) String rules
-                for (Map.Entry<String, Map<String, Set<String>>> e : stringPropertyRules.entrySet()) {
-                    String prop = e.getKey();
-                    Map<String, Set<String>> winners = e.getValue();
-                    if (winners != null) {
-                        for (Map.Entry<String, Set<String>> w : winners.entrySet()) {
-                            String winner = w.getKey();
-                            Set<String> losers = w.getValue();
-                            if (losers != null) {
-                                for (String loser : losers) {
-                                    out.write("GameRuleString: " + prop + " | " + winner + " | " + loser + nl);
+                        private Entry<String, Map<String, V>> advance() {
+                            while (names.hasNext()) {
+                                String card = names.next();
+                                Map<String, V> values = get(card);
+                                if (values != null) {
+                                    return new SimpleImmutableEntry<>(card, values);
                                 }
                             }
+                            return null;
                         }
-                    }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public Entry<String, Map<String, V>> next() {
+                            if (next == null) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Map<String, V>> current = next;
+                            next = advance();
+                            return current;
+                        }
+                    };
                 }
-            } catch (IOException e) {
-                throw new GameException("Failed to save file: " + e.getMessage());
-            }
-        } catch (IOException e) {
-            throw new GameException("Failed to save file: " + e.getMessage());
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Iterator<?> it = iterator(); it.hasNext(); it.next()) size++;
+                    return size;
+                }
+            };
         }
+    }
 
+    /**
+     * Daemon threads for file I/O, created on first use
+     */
+    private static final class IoExecutor {
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "game-io");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -553,18 +1578,23 @@ public class MyGame implements Game {
      * @throws GameException if either card is unknown
      */
     public int compareCards(String cardA, String cardB) throws GameException {
-        if (cardA == null || cardA.isEmpty() || cardB == null || cardB.isEmpty()) {
-            throw new GameException("Card name must not be empty or null");
-        }
-        if (!cards.contains(cardA)) {
-            throw new GameException("Card not defined: " + cardA);
-        }
-        if (!cards.contains(cardB)) {
-            throw new GameException("Card not defined: " + cardB);
-        }
-        if (cardA.equals(cardB)) {
+        return compareCards(resolveCard(cardA), resolveCard(cardB));
+    }
+
+    /**
+     * Compares two resolved cards, same result as compareCards(String, String) without name lookups
+     *
+     * @throws GameException if a handle is null or belongs to another game
+     */
+    public int compareCards(CardRef refA, CardRef refB) throws GameException {
+        checkCard(refA);
+        checkCard(refB);
+        if (refA == refB) {
             return 0;
         }
+        ensureRulesLoaded();
+        String cardA = refA.getName();
+        String cardB = refB.getName();
 
         int winsA = 0;
         int winsB = 0;
@@ -574,12 +1604,8 @@ public class MyGame implements Game {
             String prop = e.getKey();
             String op = e.getValue();
 
-            Map<String, Integer> propValA = cardIntProperties.get(cardA);
-            Map<String, Integer> propValB = cardIntProperties.get(cardB);
-            if (propValA == null || propValB == null) continue;
-
-            Integer ValA = propValA.get(prop);
-            Integer ValB = propValB.get(prop);
+            Integer ValA = getIntProperty(cardA, prop);
+            Integer ValB = getIntProperty(cardB, prop);
             if (ValA == null || ValB == null) continue;
 
             if (ValA.intValue() == ValB.intValue()) {
@@ -596,13 +1622,8 @@ public class MyGame implements Game {
             String prop = e.getKey();
             Map<String, Set<String>> winnersMap = e.getValue();
 
-            Map<String, String> propValA = cardStringProperties.get(cardA);
-            Map<String, String> propValB = cardStringProperties.get(cardB);
-
-            if (propValA == null || propValB == null) continue;
-
-            String ValA = propValA.get(prop);
-            String ValB = propValB.get(prop);
+            String ValA = getStringProperty(cardA, prop);
+            String ValB = getStringProperty(cardB, prop);
             if (ValA == null || ValB == null) continue;
 
             Set<String> aWinsAgainst = winnersMap == null ? null : winnersMap.get(ValA);
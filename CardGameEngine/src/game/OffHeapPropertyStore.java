@@ -0,0 +1,274 @@
+/**
+ * @author Omar Zitouni
+ * Card property values stored outside the Java heap
+ */
+
+package game;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar snapshot of card property values in native memory (java.lang.foreign)
+ * Only MyGame.reload changes it afterwards, in place.
+ * Cards are addressed by their id in the game's card table.
+ * Integer properties: one int column plus a presence bitmap per property.
+ * String properties: one int code column per property (-1 = no value) pointing into a shared
+ * string pool of UTF-8 bytes, so every distinct value is stored once.
+ *
+ * The memory belongs to a shared arena and is released by close(). close() waits for reads in progress,
+ * reads after close() find no value and isClosed() tells the caller to look on the heap again.
+ */
+final class OffHeapPropertyStore implements AutoCloseable {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG;
+
+    private final Arena arena = Arena.ofShared();
+    // readers hold the read lock, close() takes the write lock so it never frees memory under a reader
+    private final ReentrantReadWriteLock access = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    private final int cardCount;
+
+    private final Map<String, MemorySegment> intColumns = new HashMap<>();
+    private final Map<String, MemorySegment> intPresence = new HashMap<>();
+    private final Map<String, MemorySegment> codeColumns = new HashMap<>();
+
+    private final MemorySegment poolBytes;
+    private final MemorySegment poolOffsets; // value code -> start offset, one extra entry for the end
+    private final int poolSize;
+
+    /**
+     * Copies all heap property values of the game into native memory
+     */
+    OffHeapPropertyStore(MyGame game) {
+        cardCount = game.cardCount();
+        Map<String, Integer> poolCodes = new HashMap<>();
+        long poolLength = 0;
+
+        for (Map.Entry<String, String> property : game.getProperties().entrySet()) {
+            String prop = property.getKey();
+            if ("integer".equals(property.getValue())) {
+                MemorySegment column = arena.allocate(INT.byteSize() * Math.max(1, cardCount), INT.byteAlignment());
+                MemorySegment presence = arena.allocate(LONG.byteSize() * Math.max(1, words(cardCount)), LONG.byteAlignment());
+                column.fill((byte) 0);
+                presence.fill((byte) 0);
+                intColumns.put(prop, column);
+                intPresence.put(prop, presence);
+            } else {
+                MemorySegment codes = arena.allocate(INT.byteSize() * Math.max(1, cardCount), INT.byteAlignment());
+                codes.fill((byte) 0xFF); // -1
+                codeColumns.put(prop, codes);
+            }
+        }
+
+        for (int id = 0; id < cardCount; id++) {
+            String card = game.cardName(id);
+            Map<String, Integer> ints = game.heapIntValues().get(card);
+            if (ints != null) {
+                for (Map.Entry<String, Integer> e : ints.entrySet()) {
+                    intColumns.get(e.getKey()).setAtIndex(INT, id, e.getValue());
+                    MemorySegment presence = intPresence.get(e.getKey());
+                    presence.setAtIndex(LONG, id >>> 6, presence.getAtIndex(LONG, id >>> 6) | (1L << id));
+                }
+            }
+            Map<String, String> strings = game.heapStringValues().get(card);
+            if (strings != null) {
+                for (Map.Entry<String, String> e : strings.entrySet()) {
+                    Integer code = poolCodes.get(e.getValue());
+                    if (code == null) {
+                        code = poolCodes.size();
+                        poolCodes.put(e.getValue(), code);
+                        poolLength += e.getValue().getBytes(StandardCharsets.UTF_8).length;
+                    }
+                    codeColumns.get(e.getKey()).setAtIndex(INT, id, code);
+                }
+            }
+        }
+
+        // string pool: all distinct values back to back, the temporary code map is dropped afterwards
+        poolSize = poolCodes.size();
+        poolBytes = arena.allocate(Math.max(1, poolLength), 1);
+        poolOffsets = arena.allocate(LONG.byteSize() * (poolSize + 1), LONG.byteAlignment());
+        String[] byCode = new String[poolSize];
+        for (Map.Entry<String, Integer> e : poolCodes.entrySet()) {
+            byCode[e.getValue()] = e.getKey();
+        }
+        long offset = 0;
+        for (int code = 0; code < poolSize; code++) {
+            byte[] bytes = byCode[code].getBytes(StandardCharsets.UTF_8);
+            MemorySegment.copy(bytes, 0, poolBytes, ValueLayout.JAVA_BYTE, offset, bytes.length);
+            poolOffsets.setAtIndex(LONG, code, offset);
+            offset += bytes.length;
+        }
+        poolOffsets.setAtIndex(LONG, poolSize, offset);
+    }
+
+    /**
+     * @return the value or null if the card has no value (or was defined after the store was built)
+     */
+    Integer getInt(int cardId, String propertyName) {
+        MemorySegment column = intColumns.get(propertyName);
+        if (column == null || cardId < 0 || cardId >= cardCount) {
+            return null;
+        }
+        access.readLock().lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            long word = intPresence.get(propertyName).getAtIndex(LONG, cardId >>> 6);
+            if ((word & (1L << cardId)) == 0) {
+                return null;
+            }
+            return column.getAtIndex(INT, cardId);
+        } finally {
+            access.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the value or null if the card has no value (or was defined after the store was built)
+     */
+    String getString(int cardId, String propertyName) {
+        MemorySegment codes = codeColumns.get(propertyName);
+        if (codes == null || cardId < 0 || cardId >= cardCount) {
+            return null;
+        }
+        byte[] bytes;
+        access.readLock().lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            int code = codes.getAtIndex(INT, cardId);
+            if (code < 0) {
+                return null;
+            }
+            long start = poolOffsets.getAtIndex(LONG, code);
+            long end = poolOffsets.getAtIndex(LONG, code + 1);
+            bytes = poolBytes.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE);
+        } finally {
+            access.readLock().unlock();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the card has a value of the property, without decoding it
+     */
+    boolean hasValue(int cardId, String propertyName) {
+        MemorySegment presence = intPresence.get(propertyName);
+        MemorySegment codes = codeColumns.get(propertyName);
+        if (presence == null && codes == null || cardId < 0 || cardId >= cardCount) {
+            return false;
+        }
+        access.readLock().lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (presence != null) {
+                return (presence.getAtIndex(LONG, cardId >>> 6) & (1L << cardId)) != 0;
+            }
+            return codes.getAtIndex(INT, cardId) >= 0;
+        } finally {
+            access.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces or removes (value null) an integer value in place, used by MyGame.reload
+     *
+     * @return false if the store has no slot for the card or property, the value then belongs on the heap
+     */
+    boolean setInt(int cardId, String propertyName, Integer value) {
+        MemorySegment column = intColumns.get(propertyName);
+        if (column == null || cardId < 0 || cardId >= cardCount) {
+            return false;
+        }
+        access.writeLock().lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            MemorySegment presence = intPresence.get(propertyName);
+            long word = presence.getAtIndex(LONG, cardId >>> 6);
+            if (value == null) {
+                presence.setAtIndex(LONG, cardId >>> 6, word & ~(1L << cardId));
+            } else {
+                column.setAtIndex(INT, cardId, value);
+                presence.setAtIndex(LONG, cardId >>> 6, word | (1L << cardId));
+            }
+            return true;
+        } finally {
+            access.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a string value in place, used by MyGame.reload (new values are kept on the heap)
+     */
+    void clearString(int cardId, String propertyName) {
+        MemorySegment codes = codeColumns.get(propertyName);
+        if (codes == null || cardId < 0 || cardId >= cardCount) {
+            return;
+        }
+        access.writeLock().lock();
+        try {
+            if (!closed) {
+                codes.setAtIndex(INT, cardId, -1);
+            }
+        } finally {
+            access.writeLock().unlock();
+        }
+    }
+
+    int cardCount() {
+        return cardCount;
+    }
+
+    /**
+     * @return the native memory held by this store in bytes
+     */
+    long byteSize() {
+        long bytes = poolBytes.byteSize() + poolOffsets.byteSize();
+        for (MemorySegment segment : intColumns.values()) bytes += segment.byteSize();
+        for (MemorySegment segment : intPresence.values()) bytes += segment.byteSize();
+        for (MemorySegment segment : codeColumns.values()) bytes += segment.byteSize();
+        return bytes;
+    }
+
+    /**
+     * @return true once close() started, values are then found on the heap again
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Frees the native memory after the reads in progress finished
+     */
+    @Override
+    public void close() {
+        access.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            arena.close();
+        } finally {
+            access.writeLock().unlock();
+        }
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
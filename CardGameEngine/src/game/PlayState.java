@@ -0,0 +1,184 @@
+/**
+ * @author Omar Zitouni
+ * Draw pile, hand and discard pile of a deck during play
+ */
+
+package game;
+
+import framework.GameException;
+
+/**
+ * All cards of the deck live in one int[] of card ids, used as a ring split into three arcs:
+ * draw pile -> hand -> discard pile -> (back to the draw pile)
+ * The top of the draw pile is the card next to the hand, so drawing, discarding and recycling
+ * only move arc boundaries (or swap two slots) and never copy cards. Shuffling is an in-place
+ * Fisher-Yates over the draw arc driven by a SplitMix64 generator; the same seed gives the same game.
+ *
+ * A play state is a snapshot of the deck's cards when it was created and is not thread safe.
+ */
+public class PlayState {
+
+    private final MyGame game;
+    private final int[] cards;
+    private int drawStart;
+    private int drawCount;
+    private int handCount;
+    private int discardCount;
+    private long seed;
+
+    /**
+     * Creates a play state with every card of the deck on the draw pile, in deck order
+     *
+     * @param deck the deck to play
+     * @param seed seed of the shuffle generator
+     * @throws GameException if the deck is null
+     */
+    public PlayState(MyDeck deck, long seed) throws GameException {
+        if (deck == null) {
+            throw new GameException("Deck must not be null");
+        }
+        this.game = deck.getGame();
+        this.cards = deck.cardIds();
+        this.drawCount = cards.length;
+        this.seed = seed;
+    }
+
+    /**
+     * Puts every card back on the draw pile and shuffles it with a new seed, without allocating
+     * Meant for simulations that play many games with one PlayState.
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        drawStart = 0;
+        drawCount = cards.length;
+        handCount = 0;
+        discardCount = 0;
+        shuffle();
+    }
+
+    /**
+     * Shuffles the draw pile in place
+     */
+    public void shuffle() {
+        for (int i = drawCount - 1; i > 0; i--) {
+            int j = nextInt(i + 1);
+            int a = slot(drawStart + i);
+            int b = slot(drawStart + j);
+            int tmp = cards[a];
+            cards[a] = cards[b];
+            cards[b] = tmp;
+        }
+    }
+
+    /**
+     * Moves the top card of the draw pile into the hand
+     *
+     * @return the id of the drawn card, or -1 if the draw pile is empty
+     */
+    public int draw() {
+        if (drawCount == 0) {
+            return -1;
+        }
+        drawCount--;
+        handCount++;
+        return cards[slot(drawStart + drawCount)];
+    }
+
+    /**
+     * Moves a hand card onto the discard pile
+     * The last card of the hand takes the free place, so the order of the hand changes.
+     *
+     * @param handIndex position in the hand, 0 <= handIndex < getHandSize()
+     * @return the id of the discarded card
+     * @throws GameException if the index is out of range
+     */
+    public int discard(int handIndex) throws GameException {
+        if (handIndex < 0 || handIndex >= handCount) {
+            throw new GameException("Hand index out of range: " + handIndex);
+        }
+        int handStart = drawStart + drawCount;
+        int at = slot(handStart + handIndex);
+        int last = slot(handStart + handCount - 1);
+        int card = cards[at];
+        cards[at] = cards[last];
+        cards[last] = card;
+        handCount--;
+        discardCount++;
+        return card;
+    }
+
+    /**
+     * Moves the whole hand onto the discard pile
+     */
+    public void discardHand() {
+        discardCount += handCount;
+        handCount = 0;
+    }
+
+    /**
+     * Puts the discard pile under the draw pile, call shuffle() to mix it in
+     */
+    public void recycleDiscards() {
+        drawStart = slot(drawStart - discardCount + cards.length);
+        drawCount += discardCount;
+        discardCount = 0;
+    }
+
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public int getHandSize() {
+        return handCount;
+    }
+
+    public int getDiscardCount() {
+        return discardCount;
+    }
+
+    /**
+     * @return the id of a hand card, resolve names with getCardName
+     */
+    public int getHandCard(int handIndex) throws GameException {
+        if (handIndex < 0 || handIndex >= handCount) {
+            throw new GameException("Hand index out of range: " + handIndex);
+        }
+        return cards[slot(drawStart + drawCount + handIndex)];
+    }
+
+    /**
+     * @return the names of the hand cards
+     */
+    public String[] getHand() {
+        String[] hand = new String[handCount];
+        int handStart = drawStart + drawCount;
+        for (int i = 0; i < handCount; i++) {
+            hand[i] = game.cardName(cards[slot(handStart + i)]);
+        }
+        return hand;
+    }
+
+    /**
+     * @return the name of a card id returned by draw, discard or getHandCard
+     */
+    public String getCardName(int cardId) {
+        return game.cardName(cardId);
+    }
+
+    private int slot(int position) {
+        int n = cards.length;
+        return position >= n ? position - n : position;
+    }
+
+    /**
+     * SplitMix64 step reduced to [0, bound) with a multiply-shift
+     */
+    private int nextInt(int bound) {
+        seed += 0x9E3779B97F4A7C15L;
+        long z = seed;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+}
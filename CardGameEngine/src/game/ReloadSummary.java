@@ -0,0 +1,140 @@
+/**
+ * @author Omar Zitouni
+ * Changes applied to a game by MyGame.reload
+ */
+
+package game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class ReloadSummary {
+
+    private final List<String> addedCards = new ArrayList<>();
+    private final List<String> retainedCards = new ArrayList<>();
+    private final List<String> clearedCards = new ArrayList<>();
+    private final List<String> addedProperties = new ArrayList<>();
+    // property -> cards whose value was added, changed or removed
+    private final Map<String, Set<String>> changedValues = new LinkedHashMap<>();
+    private final List<String> addedRules = new ArrayList<>();
+    private final List<String> removedRules = new ArrayList<>();
+
+    ReloadSummary() {
+    }
+
+    void cardAdded(String card) {
+        addedCards.add(card);
+    }
+
+    void cardRetained(String card) {
+        retainedCards.add(card);
+    }
+
+    void cardCleared(String card) {
+        clearedCards.add(card);
+    }
+
+    void propertyAdded(String property) {
+        addedProperties.add(property);
+    }
+
+    void valueChanged(String property, String card) {
+        changedValues.computeIfAbsent(property, p -> new LinkedHashSet<>()).add(card);
+    }
+
+    void ruleAdded(String rule) {
+        addedRules.add(rule);
+    }
+
+    void ruleRemoved(String rule) {
+        removedRules.add(rule);
+    }
+
+    /**
+     * @return cards defined by the new file, in file order
+     */
+    public List<String> getAddedCards() {
+        return Collections.unmodifiableList(addedCards);
+    }
+
+    /**
+     * @return cards missing from the new file, they stay in the game because card ids are stable
+     */
+    public List<String> getRetainedCards() {
+        return Collections.unmodifiableList(retainedCards);
+    }
+
+    /**
+     * @return retained cards whose values were removed because the file has none for them
+     */
+    public List<String> getClearedCards() {
+        return Collections.unmodifiableList(clearedCards);
+    }
+
+    public List<String> getAddedProperties() {
+        return Collections.unmodifiableList(addedProperties);
+    }
+
+    /**
+     * @return property -> cards whose value of that property was added, changed or removed
+     */
+    public Map<String, Set<String>> getChangedValues() {
+        return Collections.unmodifiableMap(changedValues);
+    }
+
+    /**
+     * @return added rules, in the format of get("rule", "*")
+     */
+    public List<String> getAddedRules() {
+        return Collections.unmodifiableList(addedRules);
+    }
+
+    /**
+     * @return removed rules, in the format of get("rule", "*")
+     */
+    public List<String> getRemovedRules() {
+        return Collections.unmodifiableList(removedRules);
+    }
+
+    public boolean rulesChanged() {
+        return !addedRules.isEmpty() || !removedRules.isEmpty();
+    }
+
+    /**
+     * @return true if the property has changed values, derived data of other properties is still valid
+     */
+    public boolean affects(String property) {
+        return changedValues.containsKey(property);
+    }
+
+    /**
+     * @return true if the reload changed nothing
+     */
+    public boolean isEmpty() {
+        return addedCards.isEmpty() && addedProperties.isEmpty() && changedValues.isEmpty() && !rulesChanged();
+    }
+
+    /**
+     * @return the summary as printable lines
+     */
+    public String[] toLines() {
+        int values = 0;
+        for (Set<String> cards : changedValues.values()) {
+            values += cards.size();
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("Added cards: " + addedCards.size());
+        lines.add("Cards kept although missing from the file: " + retainedCards.size());
+        lines.add("Kept cards whose values were cleared: " + clearedCards.size());
+        lines.add("Added properties: " + addedProperties.size());
+        lines.add("Changed values: " + values + " in " + changedValues.keySet());
+        lines.add("Added rules: " + addedRules);
+        lines.add("Removed rules: " + removedRules);
+        return lines.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * @author Omar Zitouni
+ * Read-only copy of a leader's game, kept up to date from its mutation log
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class ReplicationFollower implements Runnable {
+
+    /**
+     * Read access to the follower's game, runs while no batch is being applied
+     */
+    public interface GameReader<T> {
+        T read(MyGame game) throws GameException;
+    }
+
+    private final MutationTransport transport;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object progress = new Object();
+    private MyGame game;
+    private volatile long appliedSequence = -1;
+    // sequence number the next mutation must have, only used by the replication thread
+    private long expectedSequence;
+    private volatile GameException failure;
+    private volatile boolean finished;
+
+    public ReplicationFollower(MutationTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * @return the sequence number of the last applied mutation, -1 before the snapshot arrived
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return the error that stopped replication, or null
+     */
+    public GameException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until the follower applied at least the given sequence number (read-your-writes)
+     *
+     * @return true if the sequence was reached, false on timeout or if replication stopped
+     */
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progress) {
+            while (appliedSequence < sequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || finished) {
+                    return false;
+                }
+                progress.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Runs a read against the current state of the game
+     *
+     * @throws GameException if no snapshot arrived yet or the reader fails
+     */
+    public <T> T read(GameReader<T> reader) throws GameException {
+        lock.readLock().lock();
+        try {
+            if (game == null) {
+                throw new GameException("Follower has not received a snapshot yet");
+            }
+            return reader.read(game);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Receives and applies batches until the leader closes the transport or an error occurs
+     */
+    @Override
+    public void run() {
+        try {
+            List<Mutation> batch;
+            while ((batch = transport.receive()) != null) {
+                apply(batch);
+            }
+        } catch (GameException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new GameException("Replication failed: " + e);
+        } finally {
+            try {
+                transport.close();
+            } catch (IOException ignored) {
+                // replication is over
+            }
+            synchronized (progress) {
+                finished = true;
+                progress.notifyAll();
+            }
+        }
+    }
+
+    private void apply(List<Mutation> batch) throws GameException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            // a snapshot carries the leader's sequence number on all of its entries,
+            // every later mutation must have the next number
+            boolean snapshot = false;
+            for (Mutation mutation : batch) {
+                long sequence = mutation.getSequence();
+                if (mutation.getOperation() == Mutation.GAME) {
+                    if (mutation.getArguments().length != 1) {
+                        throw new GameException("Corrupt snapshot mutation: " + sequence);
+                    }
+                    game = new MyGame(mutation.getArguments()[0]);
+                    game.markReplicated();
+                    snapshot = true;
+                } else if (game == null) {
+                    throw new GameException("Mutation received before snapshot: " + sequence);
+                } else if (snapshot && sequence == expectedSequence - 1) {
+                    mutation.applyTo(game);
+                    continue;
+                } else if (sequence != expectedSequence) {
+                    throw new GameException("Mutation sequence gap: expected " + expectedSequence + " but got " + sequence);
+                } else {
+                    mutation.applyTo(game);
+                    snapshot = false;
+                }
+                expectedSequence = sequence + 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (progress) {
+            appliedSequence = batch.get(batch.size() - 1).getSequence();
+            progress.notifyAll();
+        }
+    }
+}
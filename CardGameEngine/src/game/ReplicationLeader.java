@@ -0,0 +1,278 @@
+/**
+ * @author Omar Zitouni
+ * Game that records every mutation it applies and ships them to read-only followers
+ */
+
+package game;
+
+import framework.Deck;
+import framework.Game;
+import framework.GameException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Wraps a MyGame: every successful mutation gets the next sequence number and is buffered,
+ * buffered mutations are sent to all followers as one batch when batchSize is reached or flush() is called.
+ * A follower added later first receives a snapshot of the current state.
+ * A follower that fails to receive a batch never fails the local mutation: it is flagged and gets a
+ * fresh snapshot on the next flush instead, after MAX_FAILURES failures in a row it is dropped.
+ * getFollowerFailure() reports the most recent follower error.
+ * The wrapped game refuses reload and CSV import from then on, those changes are not recorded.
+ */
+public class ReplicationLeader implements Game {
+
+    static final int MAX_FAILURES = 3;
+
+    private final MyGame game;
+    private final int batchSize;
+    private final List<Follower> followers = new ArrayList<>();
+    private final List<Mutation> pending = new ArrayList<>();
+    private long sequence;
+    private GameException followerFailure;
+
+    public ReplicationLeader(MyGame game, int batchSize) throws GameException {
+        if (game == null) {
+            throw new GameException("Game must not be null");
+        }
+        if (batchSize < 1) {
+            throw new GameException("Batch size must be positive");
+        }
+        this.game = game;
+        this.batchSize = batchSize;
+        game.markReplicated();
+    }
+
+    public MyGame getGame() {
+        return game;
+    }
+
+    /**
+     * @return the sequence number of the last applied mutation (0 if none)
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of attached followers, including flagged ones waiting for a snapshot
+     */
+    public synchronized int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * @return the most recent error of sending to a follower, or null if none failed yet
+     */
+    public synchronized GameException getFollowerFailure() {
+        return followerFailure;
+    }
+
+    /**
+     * Attaches a follower and sends it a snapshot of the current game
+     *
+     * @param transport the connection to the follower
+     * @throws GameException if the snapshot cannot be sent
+     */
+    public synchronized void addFollower(MutationTransport transport) throws GameException {
+        flush();
+        transport.send(snapshot());
+        followers.add(new Follower(transport));
+    }
+
+    /**
+     * Sends all buffered mutations to every follower, flagged followers get a snapshot instead
+     * Send errors are recorded for getFollowerFailure(), they are not thrown.
+     */
+    public synchronized void flush() {
+        List<Mutation> batch = pending.isEmpty() ? null : new ArrayList<>(pending);
+        pending.clear();
+        List<Mutation> snapshot = null;
+        for (int i = followers.size() - 1; i >= 0; i--) {
+            Follower follower = followers.get(i);
+            try {
+                if (follower.failures > 0) {
+                    // the snapshot already contains the batch
+                    if (snapshot == null) snapshot = snapshot();
+                    follower.transport.send(snapshot);
+                    follower.failures = 0;
+                } else if (batch != null) {
+                    follower.transport.send(batch);
+                }
+            } catch (GameException e) {
+                followerFailure = e;
+                if (++follower.failures >= MAX_FAILURES) {
+                    closeQuietly(followers.remove(i).transport);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes pending mutations and closes all follower transports
+     */
+    public synchronized void close() {
+        flush();
+        for (Follower follower : followers) {
+            closeQuietly(follower.transport);
+        }
+        followers.clear();
+    }
+
+    @Override
+    public synchronized void defineCard(String name) throws GameException {
+        game.defineCard(name);
+        record(Mutation.DEFINE_CARD, name);
+    }
+
+    @Override
+    public synchronized void defineProperty(String name, String type) throws GameException {
+        game.defineProperty(name, type);
+        record(Mutation.DEFINE_PROPERTY, name, type);
+    }
+
+    @Override
+    public synchronized void setProperty(String cardName, String propertyName, String value) throws GameException {
+        game.setProperty(cardName, propertyName, value);
+        record(Mutation.SET_PROPERTY_STRING, cardName, propertyName, value);
+    }
+
+    @Override
+    public synchronized void setProperty(String cardName, String propertyName, int value) throws GameException {
+        game.setProperty(cardName, propertyName, value);
+        record(Mutation.SET_PROPERTY_INTEGER, cardName, propertyName, Integer.toString(value));
+    }
+
+    @Override
+    public synchronized void defineCards(String[] names) throws GameException {
+        game.defineCards(names);
+        record(Mutation.DEFINE_CARDS, names.clone());
+    }
+
+    @Override
+    public synchronized void setProperties(String propertyName, String[] cardNames, String[] values) throws GameException {
+        game.setProperties(propertyName, cardNames, values);
+        record(Mutation.SET_PROPERTIES_STRING, pairs(propertyName, cardNames, values));
+    }
+
+    @Override
+    public synchronized void setProperties(String propertyName, String[] cardNames, int[] values) throws GameException {
+        game.setProperties(propertyName, cardNames, values);
+        String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = Integer.toString(values[i]);
+        }
+        record(Mutation.SET_PROPERTIES_INTEGER, pairs(propertyName, cardNames, strings));
+    }
+
+    @Override
+    public synchronized void defineRule(String propertyName, String operation) throws GameException {
+        game.defineRule(propertyName, operation);
+        record(Mutation.DEFINE_RULE_INTEGER, propertyName, operation);
+    }
+
+    @Override
+    public synchronized void defineRule(String propertyName, String winningName, String losingName) throws GameException {
+        game.defineRule(propertyName, winningName, losingName);
+        record(Mutation.DEFINE_RULE_STRING, propertyName, winningName, losingName);
+    }
+
+    @Override
+    public synchronized String[] get(String type, String name) throws GameException {
+        return game.get(type, name);
+    }
+
+    @Override
+    public synchronized void saveToFile() throws GameException {
+        game.saveToFile();
+    }
+
+    @Override
+    public Deck createDeck() {
+        return game.createDeck();
+    }
+
+    private void record(byte operation, String... arguments) {
+        pending.add(new Mutation(++sequence, operation, arguments));
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * The current state as mutations, all tagged with the current sequence number
+     */
+    private List<Mutation> snapshot() throws GameException {
+        game.ensureAllLoaded();
+        List<Mutation> snapshot = new ArrayList<>();
+        snapshot.add(new Mutation(sequence, Mutation.GAME, game.getGameName()));
+        if (!game.getCards().isEmpty()) {
+            snapshot.add(new Mutation(sequence, Mutation.DEFINE_CARDS, game.getCards().toArray(new String[0])));
+        }
+        for (Map.Entry<String, String> property : game.getProperties().entrySet()) {
+            snapshot.add(new Mutation(sequence, Mutation.DEFINE_PROPERTY, property.getKey(), property.getValue()));
+        }
+        for (Map.Entry<String, String> property : game.getProperties().entrySet()) {
+            String prop = property.getKey();
+            boolean integer = "integer".equals(property.getValue());
+            List<String> arguments = new ArrayList<>();
+            arguments.add(prop);
+            for (String card : game.getCards()) {
+                Object value = integer ? game.getIntProperty(card, prop) : game.getStringProperty(card, prop);
+                if (value != null) {
+                    arguments.add(card);
+                    arguments.add(value.toString());
+                }
+            }
+            if (arguments.size() > 1) {
+                snapshot.add(new Mutation(sequence,
+                        integer ? Mutation.SET_PROPERTIES_INTEGER : Mutation.SET_PROPERTIES_STRING,
+                        arguments.toArray(new String[0])));
+            }
+        }
+        for (Map.Entry<String, String> rule : game.getIntPropertyRules().entrySet()) {
+            snapshot.add(new Mutation(sequence, Mutation.DEFINE_RULE_INTEGER, rule.getKey(), rule.getValue()));
+        }
+        for (Map.Entry<String, Map<String, Set<String>>> rule : game.getStringPropertyRules().entrySet()) {
+            for (Map.Entry<String, Set<String>> winner : rule.getValue().entrySet()) {
+                for (String loser : winner.getValue()) {
+                    snapshot.add(new Mutation(sequence, Mutation.DEFINE_RULE_STRING,
+                            rule.getKey(), winner.getKey(), loser));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static String[] pairs(String propertyName, String[] cardNames, String[] values) {
+        String[] arguments = new String[1 + 2 * cardNames.length];
+        arguments[0] = propertyName;
+        for (int i = 0; i < cardNames.length; i++) {
+            arguments[1 + 2 * i] = cardNames[i];
+            arguments[2 + 2 * i] = values[i];
+        }
+        return arguments;
+    }
+
+    private static final class Follower {
+        final MutationTransport transport;
+        // failed sends in a row, a follower with failures gets a snapshot on the next flush
+        int failures;
+
+        Follower(MutationTransport transport) {
+            this.transport = transport;
+        }
+    }
+
+    private static void closeQuietly(MutationTransport transport) {
+        try {
+            transport.close();
+        } catch (IOException ignored) {
+            // the follower is gone anyway
+        }
+    }
+}
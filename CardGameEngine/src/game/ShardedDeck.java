@@ -0,0 +1,139 @@
+/**
+ * @author Omar Zitouni
+ * Deck of a sharded game, split into one segment per shard
+ */
+
+package game;
+
+import framework.Deck;
+import framework.GameException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class ShardedDeck implements Deck {
+
+    private final ShardedGame game;
+    private final MyDeck[] segments;
+    private final long[][] positions;  // per segment: index in segment -> position in the deck
+    private final int[] segmentSizes;
+    private int size;
+
+    public ShardedDeck(ShardedGame game) {
+        this.game = game;
+        int shardCount = game.getShardCount();
+        segments = new MyDeck[shardCount];
+        positions = new long[shardCount][];
+        segmentSizes = new int[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            segments[s] = new MyDeck(game.shard(s));
+            positions[s] = new long[16];
+        }
+    }
+
+    /**
+     * Adds a card to the segment of its shard
+     *
+     * @param cardName the name of the card to add
+     * @throws GameException if the card name is invalid or not defined in the game
+     */
+    @Override
+    public synchronized void addCard(String cardName) throws GameException {
+        if (cardName == null || cardName.isEmpty()) {
+            throw new GameException("Card name must not be empty or null");
+        }
+        int s = game.shardOf(cardName);
+        game.lock(s).readLock().lock();
+        try {
+            segments[s].addCard(cardName);
+        } finally {
+            game.lock(s).readLock().unlock();
+        }
+        if (segmentSizes[s] == positions[s].length) {
+            positions[s] = Arrays.copyOf(positions[s], positions[s].length * 2);
+        }
+        positions[s][segmentSizes[s]++] = size++;
+    }
+
+    @Override
+    public synchronized String[] getAllCards() {
+        List<ShardedGame.Part> parts = new ArrayList<>();
+        for (int s = 0; s < segments.length; s++) {
+            parts.add(new ShardedGame.Part(segments[s].getAllCards(), positions[s]));
+        }
+        return ShardedGame.mergeByPosition(parts, size);
+    }
+
+    @Override
+    public synchronized String[] getMatchingCards(String propertyName, int value) throws GameException {
+        return gather(s -> segments[s].getMatchingCards(propertyName, value));
+    }
+
+    @Override
+    public synchronized String[] getMatchingCards(String propertyName, String value) throws GameException {
+        return gather(s -> segments[s].getMatchingCards(propertyName, value));
+    }
+
+    /**
+     * Scores every segment against the opponent in parallel
+     * The opponent's values are copied out of its shard first, so no task needs two shard locks.
+     */
+    @Override
+    public synchronized String[] selectBeatingCards(String opponentCard) throws GameException {
+        if (opponentCard == null || opponentCard.isEmpty()) {
+            throw new GameException("Opponent card name must not be null or empty");
+        }
+        int opponentShard = game.shardOf(opponentCard);
+        MyGame opponent;
+        game.lock(opponentShard).readLock().lock();
+        try {
+            opponent = opponentValues(game.shard(opponentShard), opponentCard);
+        } finally {
+            game.lock(opponentShard).readLock().unlock();
+        }
+        return gather(s -> segments[s].selectBeatingCards(opponentCard, opponent));
+    }
+
+    private static MyGame opponentValues(MyGame shard, String card) throws GameException {
+        if (!shard.getCards().contains(card)) {
+            throw new GameException("Opponent card is not defined in the game: " + card);
+        }
+        MyGame copy = new MyGame(shard.getGameName());
+        copy.defineCard(card);
+        for (Map.Entry<String, String> property : shard.getProperties().entrySet()) {
+            String prop = property.getKey();
+            copy.defineProperty(prop, property.getValue());
+            if ("integer".equals(property.getValue())) {
+                Integer value = shard.getIntProperty(card, prop);
+                if (value != null) copy.putIntProperty(card, prop, value);
+            } else {
+                String value = shard.getStringProperty(card, prop);
+                if (value != null) copy.putStringProperty(card, prop, value);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Runs a per segment query on all shards in parallel and merges the results into deck order
+     * A segment result is a subsequence of the segment; as results only depend on the card,
+     * every occurrence of a returned card is part of it, which maps results back to positions.
+     */
+    private String[] gather(ShardedGame.ShardTask<String[]> query) throws GameException {
+        List<ShardedGame.Part> parts = game.scatter(s -> {
+            String[] result = query.run(s);
+            String[] segment = segments[s].getAllCards();
+            long[] resultPositions = new long[result.length];
+            int k = 0;
+            for (int i = 0; i < segment.length && k < result.length; i++) {
+                if (segment[i].equals(result[k])) {
+                    resultPositions[k++] = positions[s][i];
+                }
+            }
+            return new ShardedGame.Part(result, resultPositions);
+        });
+        return ShardedGame.mergeByPosition(parts, size);
+    }
+}
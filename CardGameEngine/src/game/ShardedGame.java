@@ -0,0 +1,479 @@
+/**
+ * @author Omar Zitouni
+ * Game partitioned into independent shards by card name
+ */
+
+package game;
+
+import framework.Deck;
+import framework.Game;
+import framework.GameException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Every card lives in exactly one shard (chosen by the hash of its name) together with its property values.
+ * Properties and rules are defined in every shard. Writes to a card only lock its shard, so writers on
+ * different shards never contend. Queries over all cards run on all shards in parallel and are merged
+ * back into the order a single MyGame would return.
+ */
+public class ShardedGame implements Game {
+
+    private final String gameName;
+    private final MyGame[] shards;
+    private final ReentrantReadWriteLock[] locks;
+    private final long[][] ordinals;  // per shard: shard card id -> global definition order
+    private final AtomicLong nextOrdinal = new AtomicLong();
+
+    public ShardedGame(String name, int shardCount) throws GameException {
+        if (shardCount < 1) {
+            throw new GameException("Shard count must be positive");
+        }
+        this.gameName = name;
+        shards = new MyGame[shardCount];
+        locks = new ReentrantReadWriteLock[shardCount];
+        ordinals = new long[shardCount][];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new MyGame(name);
+            locks[i] = new ReentrantReadWriteLock();
+            ordinals[i] = new long[16];
+        }
+    }
+
+    public String getGameName() {
+        return gameName;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    int shardOf(String cardName) {
+        int h = cardName.hashCode();
+        h ^= h >>> 16;
+        return Math.floorMod(h, shards.length);
+    }
+
+    MyGame shard(int index) {
+        return shards[index];
+    }
+
+    ReentrantReadWriteLock lock(int index) {
+        return locks[index];
+    }
+
+    @Override
+    public void defineCard(String name) throws GameException {
+        if (name == null || name.isEmpty()) {
+            throw new GameException("Card name must not be null or empty!");
+        }
+        int s = shardOf(name);
+        locks[s].writeLock().lock();
+        try {
+            shards[s].defineCard(name);
+            recordOrdinal(s, name);
+        } finally {
+            locks[s].writeLock().unlock();
+        }
+    }
+
+    /**
+     * Defines many cards, validated across all shards before any card is added
+     */
+    @Override
+    public void defineCards(String[] names) throws GameException {
+        if (names == null) {
+            throw new GameException("Card names must not be null!");
+        }
+        Set<String> batch = new HashSet<>();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null || names[i].isEmpty()) {
+                throw new GameException("Card name must not be null or empty at index " + i);
+            }
+            if (!batch.add(names[i])) {
+                throw new GameException("Card name already exists: " + names[i]);
+            }
+        }
+        boolean[] involved = new boolean[shards.length];
+        for (String name : names) {
+            involved[shardOf(name)] = true;
+        }
+        lockAll(involved);
+        try {
+            for (String name : names) {
+                if (shards[shardOf(name)].getCards().contains(name)) {
+                    throw new GameException("Card name already exists: " + name);
+                }
+            }
+            for (String name : names) {
+                int s = shardOf(name);
+                shards[s].defineCard(name);
+                recordOrdinal(s, name);
+            }
+        } finally {
+            unlockAll(involved);
+        }
+    }
+
+    @Override
+    public void defineProperty(String name, String type) throws GameException {
+        boolean[] all = allShards();
+        lockAll(all);
+        try {
+            // the first shard validates, the others have the same definitions and cannot fail
+            for (MyGame shard : shards) {
+                shard.defineProperty(name, type);
+            }
+        } finally {
+            unlockAll(all);
+        }
+    }
+
+    @Override
+    public void setProperty(String cardName, String propertyName, String value) throws GameException {
+        if (cardName == null || cardName.isEmpty()) {
+            throw new GameException("Card name must not be null or empty!");
+        }
+        int s = shardOf(cardName);
+        locks[s].writeLock().lock();
+        try {
+            shards[s].setProperty(cardName, propertyName, value);
+        } finally {
+            locks[s].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setProperty(String cardName, String propertyName, int value) throws GameException {
+        if (cardName == null || cardName.isEmpty()) {
+            throw new GameException("Card name must not be null or empty");
+        }
+        int s = shardOf(cardName);
+        locks[s].writeLock().lock();
+        try {
+            shards[s].setProperty(cardName, propertyName, value);
+        } finally {
+            locks[s].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setProperties(String propertyName, String[] cardNames, String[] values) throws GameException {
+        if (values == null) {
+            throw new GameException("Card names and values must not be null!");
+        }
+        setPropertiesSharded(propertyName, cardNames, values.length, values, null);
+    }
+
+    @Override
+    public void setProperties(String propertyName, String[] cardNames, int[] values) throws GameException {
+        if (values == null) {
+            throw new GameException("Card names and values must not be null!");
+        }
+        setPropertiesSharded(propertyName, cardNames, values.length, null, values);
+    }
+
+    /**
+     * Splits a batch by shard, validates every part before applying any of them
+     */
+    private void setPropertiesSharded(String propertyName, String[] cardNames, int valueCount,
+                                      String[] strings, int[] ints) throws GameException {
+        if (cardNames == null) {
+            throw new GameException("Card names and values must not be null!");
+        }
+        if (cardNames.length != valueCount) {
+            throw new GameException("Card names and values must have the same length!");
+        }
+        List<List<Integer>> parts = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            parts.add(new ArrayList<>());
+        }
+        boolean[] involved = new boolean[shards.length];
+        for (int i = 0; i < cardNames.length; i++) {
+            if (cardNames[i] == null || cardNames[i].isEmpty()) {
+                throw new GameException("Card name must not be null or empty at index " + i);
+            }
+            int s = shardOf(cardNames[i]);
+            parts.get(s).add(i);
+            involved[s] = true;
+        }
+        if (propertyName == null || propertyName.isEmpty()) {
+            throw new GameException("Property name must not be null or empty!");
+        }
+        int first = 0;
+        while (first < involved.length - 1 && !involved[first]) first++;
+        involved[first] = true;
+        lockAll(involved);
+        try {
+            // property definitions are identical in every shard, read them from one we hold
+            String type = shards[first].getProperties().get(propertyName);
+            String expected = strings != null ? "string" : "integer";
+            if (type == null) {
+                throw new GameException("Property not defined: " + propertyName);
+            }
+            if (!expected.equals(type)) {
+                throw new GameException("Property is not of type " + expected + ": " + propertyName);
+            }
+            Set<String> batch = new HashSet<>();
+            for (int i = 0; i < cardNames.length; i++) {
+                MyGame shard = shards[shardOf(cardNames[i])];
+                if (!shard.getCards().contains(cardNames[i])) {
+                    throw new GameException("Card not defined: " + cardNames[i]);
+                }
+                Object current = strings != null
+                        ? shard.getStringProperty(cardNames[i], propertyName)
+                        : shard.getIntProperty(cardNames[i], propertyName);
+                if (!batch.add(cardNames[i]) || current != null) {
+                    throw new GameException("Property already set for card: " + cardNames[i] + "." + propertyName);
+                }
+                if (strings != null && (strings[i] == null || strings[i].isEmpty())) {
+                    throw new GameException("Value must not be null or empty at index " + i);
+                }
+            }
+            for (int s = 0; s < shards.length; s++) {
+                List<Integer> part = parts.get(s);
+                if (part.isEmpty()) continue;
+                String[] names = new String[part.size()];
+                for (int k = 0; k < names.length; k++) {
+                    names[k] = cardNames[part.get(k)];
+                }
+                if (strings != null) {
+                    String[] partValues = new String[names.length];
+                    for (int k = 0; k < names.length; k++) partValues[k] = strings[part.get(k)];
+                    shards[s].setProperties(propertyName, names, partValues);
+                } else {
+                    int[] partValues = new int[names.length];
+                    for (int k = 0; k < names.length; k++) partValues[k] = ints[part.get(k)];
+                    shards[s].setProperties(propertyName, names, partValues);
+                }
+            }
+        } finally {
+            unlockAll(involved);
+        }
+    }
+
+    @Override
+    public void defineRule(String propertyName, String operation) throws GameException {
+        boolean[] all = allShards();
+        lockAll(all);
+        try {
+            for (MyGame shard : shards) {
+                shard.defineRule(propertyName, operation);
+            }
+        } finally {
+            unlockAll(all);
+        }
+    }
+
+    @Override
+    public void defineRule(String propertyName, String winningName, String losingName) throws GameException {
+        boolean[] all = allShards();
+        lockAll(all);
+        try {
+            for (MyGame shard : shards) {
+                shard.defineRule(propertyName, winningName, losingName);
+            }
+        } finally {
+            unlockAll(all);
+        }
+    }
+
+    /**
+     * Same results as MyGame.get, "card" with "*" gathers all shards in parallel
+     */
+    @Override
+    public String[] get(String type, String name) throws GameException {
+        if ("card".equals(type) && "*".equals(name)) {
+            return mergeByPosition(scatter(this::cardsOf), nextOrdinal.get());
+        }
+        if ("card".equals(type) && name != null && !name.isEmpty()) {
+            int s = shardOf(name);
+            locks[s].readLock().lock();
+            try {
+                return shards[s].get(type, name);
+            } finally {
+                locks[s].readLock().unlock();
+            }
+        }
+        locks[0].readLock().lock();
+        try {
+            return shards[0].get(type, name);
+        } finally {
+            locks[0].readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all shards into one .game file, cards in definition order
+     */
+    @Override
+    public void saveToFile() throws GameException {
+        for (ReentrantReadWriteLock lock : locks) lock.readLock().lock();
+        try {
+            // gathered on this thread: parallel readers could queue behind a waiting writer
+            List<Part> parts = new ArrayList<>();
+            for (int s = 0; s < shards.length; s++) {
+                parts.add(cardsOf(s));
+            }
+            MyGame merged = new MyGame(gameName);
+            merged.defineCards(mergeByPosition(parts, nextOrdinal.get()));
+            for (Map.Entry<String, String> property : shards[0].getProperties().entrySet()) {
+                merged.defineProperty(property.getKey(), property.getValue());
+            }
+            for (MyGame shard : shards) {
+                for (String card : shard.getCards()) {
+                    for (Map.Entry<String, String> property : shard.getProperties().entrySet()) {
+                        String prop = property.getKey();
+                        if ("integer".equals(property.getValue())) {
+                            Integer value = shard.getIntProperty(card, prop);
+                            if (value != null) merged.putIntProperty(card, prop, value);
+                        } else {
+                            String value = shard.getStringProperty(card, prop);
+                            if (value != null) merged.putStringProperty(card, prop, value);
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, String> rule : shards[0].getIntPropertyRules().entrySet()) {
+                merged.defineRule(rule.getKey(), rule.getValue());
+            }
+            for (Map.Entry<String, Map<String, Set<String>>> rule : shards[0].getStringPropertyRules().entrySet()) {
+                for (Map.Entry<String, Set<String>> winner : rule.getValue().entrySet()) {
+                    for (String loser : winner.getValue()) {
+                        merged.defineRule(rule.getKey(), winner.getKey(), loser);
+                    }
+                }
+            }
+            merged.saveToFile();
+        } finally {
+            for (ReentrantReadWriteLock lock : locks) lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Deck createDeck() {
+        return new ShardedDeck(this);
+    }
+
+    /**
+     * Shard task that may fail with a GameException, runs under the shard's read lock
+     */
+    interface ShardTask<T> {
+        T run(int shard) throws GameException;
+    }
+
+    /**
+     * Runs the task on every shard in parallel and returns the results in shard order
+     */
+    <T> List<T> scatter(ShardTask<T> task) throws GameException {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.length);
+        for (int s = 0; s < shards.length; s++) {
+            final int shard = s;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                locks[shard].readLock().lock();
+                try {
+                    return task.run(shard);
+                } catch (GameException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    locks[shard].readLock().unlock();
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof GameException) {
+                    throw (GameException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Card names of one shard with their global definition order, caller holds the shard's lock
+     */
+    private Part cardsOf(int shard) {
+        String[] cards = shards[shard].getCards().toArray(new String[0]);
+        return new Part(cards, Arrays.copyOf(ordinals[shard], cards.length));
+    }
+
+    /**
+     * Values of one shard tagged with their global position (definition order or deck position)
+     */
+    static final class Part {
+        final String[] values;
+        final long[] positions;
+
+        Part(String[] values, long[] positions) {
+            this.values = values;
+            this.positions = positions;
+        }
+    }
+
+    /**
+     * Merges per shard results whose global positions are unique and below size
+     */
+    static String[] mergeByPosition(List<Part> parts, long size) {
+        String[] slots = new String[(int) size];
+        int count = 0;
+        for (Part part : parts) {
+            for (int i = 0; i < part.values.length; i++) {
+                slots[(int) part.positions[i]] = part.values[i];
+                count++;
+            }
+        }
+        if (count == slots.length) {
+            return slots;
+        }
+        String[] merged = new String[count];
+        int k = 0;
+        for (String slot : slots) {
+            if (slot != null) merged[k++] = slot;
+        }
+        return merged;
+    }
+
+    /**
+     * Must be called while holding the shard's write lock, right after the card was defined there
+     */
+    private void recordOrdinal(int shard, String name) {
+        int id = shards[shard].cardId(name);
+        if (id >= ordinals[shard].length) {
+            ordinals[shard] = Arrays.copyOf(ordinals[shard], Math.max(id + 1, ordinals[shard].length * 2));
+        }
+        ordinals[shard][id] = nextOrdinal.getAndIncrement();
+    }
+
+    private boolean[] allShards() {
+        boolean[] all = new boolean[shards.length];
+        Arrays.fill(all, true);
+        return all;
+    }
+
+    // locks are always taken in shard order to avoid deadlocks
+    private void lockAll(boolean[] involved) {
+        for (int s = 0; s < involved.length; s++) {
+            if (involved[s]) locks[s].writeLock().lock();
+        }
+    }
+
+    private void unlockAll(boolean[] involved) {
+        for (int s = involved.length - 1; s >= 0; s--) {
+            if (involved[s]) locks[s].writeLock().unlock();
+        }
+    }
+}
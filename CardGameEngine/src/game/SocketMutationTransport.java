@@ -0,0 +1,57 @@
+/**
+ * @author Omar Zitouni
+ * Mutation transport over a TCP socket
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+public class SocketMutationTransport extends StreamMutationTransport {
+
+    private final Socket socket;
+
+    private SocketMutationTransport(Socket socket) throws IOException {
+        super(socket.getInputStream(), socket.getOutputStream());
+        this.socket = socket;
+    }
+
+    /**
+     * Connects to a leader or follower listening on host:port
+     */
+    public static SocketMutationTransport connect(String host, int port) throws GameException {
+        try {
+            Socket socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            return new SocketMutationTransport(socket);
+        } catch (IOException e) {
+            throw new GameException("Failed to connect to " + host + ":" + port + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for the next connection on the server socket
+     */
+    public static SocketMutationTransport accept(ServerSocket server) throws GameException {
+        try {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            return new SocketMutationTransport(socket);
+        } catch (IOException e) {
+            throw new GameException("Failed to accept connection: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * @author Omar Zitouni
+ * Mutation transport over a pair of byte streams (pipes, files, sockets)
+ */
+
+package game;
+
+import framework.GameException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frame format: batch size (int) followed by the mutations of the batch
+ * Either stream may be null for a send-only or receive-only end.
+ */
+public class StreamMutationTransport implements MutationTransport {
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public StreamMutationTransport(InputStream in, OutputStream out) {
+        this.in = in == null ? null : new DataInputStream(new BufferedInputStream(in));
+        this.out = out == null ? null : new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    @Override
+    public synchronized void send(List<Mutation> batch) throws GameException {
+        if (out == null) {
+            throw new GameException("Transport cannot send");
+        }
+        try {
+            out.writeInt(batch.size());
+            for (Mutation mutation : batch) {
+                mutation.writeTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new GameException("Failed to send mutations: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<Mutation> receive() throws GameException {
+        if (in == null) {
+            throw new GameException("Transport cannot receive");
+        }
+        try {
+            int size;
+            try {
+                size = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (size < 0) {
+                throw new GameException("Corrupt mutation batch size: " + size);
+            }
+            // the size comes from the stream, so the list grows with the mutations actually read
+            List<Mutation> batch = new ArrayList<>(Math.min(size, 1024));
+            for (int i = 0; i < size; i++) {
+                batch.add(Mutation.readFrom(in));
+            }
+            return batch;
+        } catch (EOFException e) {
+            throw new GameException("Truncated mutation batch");
+        } catch (IOException e) {
+            throw new GameException("Failed to receive mutations: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out != null) out.close();
+        } finally {
+            if (in != null) in.close();
+        }
+    }
+}
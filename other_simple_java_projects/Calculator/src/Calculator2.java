@@ -1,7 +1,17 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
 public class Calculator2 {
     public static void main(String[] args) {
-        if (args.length != 3) {
-            System.out.println("Usage: java Calculator <num1> <operation> <num2>");
+        if (args.length == 0) {
+            evaluateLines();
+            return;
+        }
+        if (args.length != 3 || args[1].contains("=")) {
+            evaluateExpression(args);
             return;
         }
         double num1;
@@ -35,4 +45,64 @@ public class Calculator2 {
                 System.out.println("Supported operations are: +, -, *, /");
         }
     }
+
+    // java Calculator2 "<expression>" [name=value ...]
+    private static void evaluateExpression(String[] args) {
+        Map<String, Double> bindings = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            int at = args[i].indexOf('=');
+            if (at <= 0 || !isNumber(args[i].substring(at + 1))) {
+                System.out.println("Usage: java Calculator2 <num1> <operation> <num2>");
+                System.out.println("   or: java Calculator2 \"<expression>\" [name=value ...]");
+                System.out.println("   or: java Calculator2 (reads expressions and name = expression lines from standard input)");
+                return;
+            }
+            bindings.put(args[i].substring(0, at).trim(), Double.parseDouble(args[i].substring(at + 1)));
+        }
+        try {
+            System.out.println("Result: " + Expression.compile(args[0]).evaluate(bindings));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Evaluates one expression per line, "name = expression" stores the result for the following lines
+    private static void evaluateLines() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        Map<String, Double> bindings = new HashMap<>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                String name = null;
+                int at = line.indexOf('=');
+                if (at > 0) {
+                    name = line.substring(0, at).trim();
+                    line = line.substring(at + 1);
+                }
+                try {
+                    double result = cache.compile(line).evaluate(bindings);
+                    if (name != null) {
+                        bindings.put(name, result);
+                    }
+                    System.out.println((name != null ? name + " = " : "Result: ") + result);
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    System.out.println("Error: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 }
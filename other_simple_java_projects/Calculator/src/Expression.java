@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// An arithmetic expression parsed once into a tree that can be evaluated many times.
+// Supports + - * / % ^ (power, right associative), unary minus, parentheses, numbers and
+// variable names. Sub-expressions without variables are folded into constants while parsing.
+// Variables get slots in the order they first appear, evaluate(double...) takes the values in
+// that order. An Expression is immutable and can be shared between threads.
+public class Expression {
+
+    private final String source;
+    private final Node root;
+    private final String[] variables;
+
+    private Expression(String source, Node root, String[] variables) {
+        this.source = source;
+        this.root = root;
+        this.variables = variables;
+    }
+
+    public static Expression compile(String source) {
+        if (source == null || source.trim().isEmpty()) {
+            throw new IllegalArgumentException("Expression must not be empty");
+        }
+        Parser parser = new Parser(source);
+        Node root = parser.parseExpression();
+        parser.skipSpaces();
+        if (parser.position < source.length()) {
+            throw parser.error("Unexpected '" + source.charAt(parser.position) + "'");
+        }
+        return new Expression(source, root, parser.variables.toArray(new String[0]));
+    }
+
+    // Values in the order of getVariables()
+    public double evaluate(double... values) {
+        if (values.length != variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " values but got " + values.length);
+        }
+        return root.evaluate(values);
+    }
+
+    public double evaluate(Map<String, Double> bindings) {
+        double[] values = new double[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            Double value = bindings.get(variables[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for variable " + variables[i]);
+            }
+            values[i] = value;
+        }
+        return root.evaluate(values);
+    }
+
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    // True if the whole expression was folded into a single number
+    public boolean isConstant() {
+        return root instanceof Constant;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private interface Node {
+        double evaluate(double[] values);
+    }
+
+    private static final class Constant implements Node {
+        private final double value;
+
+        private Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(double[] values) {
+            return value;
+        }
+    }
+
+    private static final class Variable implements Node {
+        private final int slot;
+
+        private Variable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public double evaluate(double[] values) {
+            return values[slot];
+        }
+    }
+
+    private static final class Negate implements Node {
+        private final Node operand;
+
+        private Negate(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public double evaluate(double[] values) {
+            return -operand.evaluate(values);
+        }
+    }
+
+    private static double apply(char operator, double a, double b) {
+        switch (operator) {
+            case '+':
+                return a + b;
+            case '-':
+                return a - b;
+            case '*':
+                return a * b;
+            case '/':
+                return divide(a, b);
+            case '%':
+                return remainder(a, b);
+            default:
+                return Math.pow(a, b);
+        }
+    }
+
+    private static double divide(double a, double b) {
+        if (b == 0) {
+            throw new ArithmeticException("Cannot divide by zero!");
+        }
+        return a / b;
+    }
+
+    private static double remainder(double a, double b) {
+        if (b == 0) {
+            throw new ArithmeticException("Cannot divide by zero!");
+        }
+        return a % b;
+    }
+
+    private static Node binary(char operator, Node left, Node right) {
+        if (left instanceof Constant && right instanceof Constant) {
+            double b = ((Constant) right).value;
+            if (b != 0 || (operator != '/' && operator != '%')) { // division by zero fails when evaluated
+                return new Constant(apply(operator, ((Constant) left).value, b));
+            }
+        }
+        // one node class per operator, so evaluating does not branch on the operator
+        switch (operator) {
+            case '+':
+                return values -> left.evaluate(values) + right.evaluate(values);
+            case '-':
+                return values -> left.evaluate(values) - right.evaluate(values);
+            case '*':
+                return values -> left.evaluate(values) * right.evaluate(values);
+            case '/':
+                return values -> divide(left.evaluate(values), right.evaluate(values));
+            case '%':
+                return values -> remainder(left.evaluate(values), right.evaluate(values));
+            default:
+                return values -> Math.pow(left.evaluate(values), right.evaluate(values));
+        }
+    }
+
+    // expression := term (('+' | '-') term)*
+    // term       := unary (('*' | '/' | '%') unary)*
+    // unary      := ('-' | '+') unary | power
+    // power      := primary ('^' unary)?
+    // primary    := number | name | '(' expression ')'
+    private static final class Parser {
+        private final String source;
+        private final List<String> variables = new ArrayList<>();
+        private int position;
+
+        private Parser(String source) {
+            this.source = source;
+        }
+
+        private Node parseExpression() {
+            Node node = parseTerm();
+            while (true) {
+                char operator = peek();
+                if (operator != '+' && operator != '-') return node;
+                position++;
+                node = binary(operator, node, parseTerm());
+            }
+        }
+
+        private Node parseTerm() {
+            Node node = parseUnary();
+            while (true) {
+                char operator = peek();
+                if (operator != '*' && operator != '/' && operator != '%') return node;
+                position++;
+                node = binary(operator, node, parseUnary());
+            }
+        }
+
+        private Node parseUnary() {
+            char c = peek();
+            if (c == '-' || c == '+') {
+                position++;
+                Node operand = parseUnary();
+                if (c == '+') return operand;
+                return operand instanceof Constant ? new Constant(-((Constant) operand).value) : new Negate(operand);
+            }
+            return parsePower();
+        }
+
+        private Node parsePower() {
+            Node base = parsePrimary();
+            if (peek() == '^') {
+                position++;
+                return binary('^', base, parseUnary());
+            }
+            return base;
+        }
+
+        private Node parsePrimary() {
+            char c = peek();
+            if (c == '(') {
+                position++;
+                Node node = parseExpression();
+                if (peek() != ')') {
+                    throw error("Missing ')'");
+                }
+                position++;
+                return node;
+            }
+            int start = position;
+            if (Character.isDigit(c) || c == '.') {
+                while (position < source.length() && (Character.isDigit(source.charAt(position)) || source.charAt(position) == '.')) {
+                    position++;
+                }
+                if (position < source.length() && (source.charAt(position) == 'e' || source.charAt(position) == 'E')) {
+                    int mark = position++;
+                    if (position < source.length() && (source.charAt(position) == '+' || source.charAt(position) == '-')) position++;
+                    if (position < source.length() && Character.isDigit(source.charAt(position))) {
+                        while (position < source.length() && Character.isDigit(source.charAt(position))) position++;
+                    } else {
+                        position = mark; // not an exponent, e.g. "2e" is a syntax error below
+                    }
+                }
+                try {
+                    return new Constant(Double.parseDouble(source.substring(start, position)));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number '" + source.substring(start, position) + "'");
+                }
+            }
+            if (Character.isLetter(c) || c == '_') {
+                while (position < source.length() && (Character.isLetterOrDigit(source.charAt(position)) || source.charAt(position) == '_')) {
+                    position++;
+                }
+                String name = source.substring(start, position);
+                int slot = variables.indexOf(name);
+                if (slot < 0) {
+                    slot = variables.size();
+                    variables.add(name);
+                }
+                return new Variable(slot);
+            }
+            throw error(c == 0 ? "Unexpected end of expression" : "Unexpected '" + c + "'");
+        }
+
+        private char peek() {
+            skipSpaces();
+            return position < source.length() ? source.charAt(position) : 0;
+        }
+
+        private void skipSpaces() {
+            while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (position + 1) + " in: " + source);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// Evaluation benchmark: a two-variable formula compiled once and evaluated many times, compared
+// with parsing it again for every evaluation.
+// Usage: ExpressionBenchmark [evaluations]
+public class ExpressionBenchmark {
+
+    private static final String FORMULA = "(x * 3 + y / 2) % 7 - x ^ 2";
+
+    public static void main(String[] args) {
+        int evaluations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Expression expression = Expression.compile(FORMULA);
+
+        for (int round = 1; round <= 3; round++) {
+            double sum = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < evaluations; i++) {
+                sum += expression.evaluate(i & 1023, (i >>> 10) + 1);
+            }
+            long compiled = System.nanoTime() - begin;
+
+            int parses = Math.max(1, evaluations / 100);
+            begin = System.nanoTime();
+            for (int i = 0; i < parses; i++) {
+                sum += Expression.compile(FORMULA).evaluate(i & 1023, (i >>> 10) + 1);
+            }
+            long parsed = System.nanoTime() - begin;
+
+            System.out.printf("Round %d: compiled %.1f ns per evaluation, parsed every time %.1f ns (checksum %.3e)%n",
+                    round, (double) compiled / evaluations, (double) parsed / parses, sum);
+        }
+    }
+}
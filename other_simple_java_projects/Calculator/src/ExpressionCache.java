@@ -0,0 +1,49 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compiled expressions keyed by their source text, the least recently used one is dropped when full
+public class ExpressionCache {
+
+    private final int capacity;
+    private final Map<String, Expression> expressions;
+    private long hits;
+    private long misses;
+
+    public ExpressionCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.expressions = new LinkedHashMap<String, Expression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+                return size() > ExpressionCache.this.capacity;
+            }
+        };
+    }
+
+    // Returns the cached expression or compiles and caches it
+    public synchronized Expression compile(String source) {
+        Expression expression = expressions.get(source);
+        if (expression != null) {
+            hits++;
+            return expression;
+        }
+        misses++;
+        expression = Expression.compile(source);
+        expressions.put(source, expression);
+        return expression;
+    }
+
+    public synchronized int size() {
+        return expressions.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
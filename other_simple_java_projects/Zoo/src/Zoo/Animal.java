@@ -1,10 +1,13 @@
 package Zoo;
 
 public abstract class Animal {
-    protected String name;
-    protected int size;
-    protected int foodNeed;
-    protected int waterNeed;
+    private String name;
+    private int size;
+    private int foodNeed;
+    private int waterNeed;
+    // set while the animal is a view of a slot of an AnimalStore, the fields above are then unused
+    private AnimalStore store;
+    private int slot;
 
     public Animal(String name, int size, int foodNeed, int waterNeed) {
         this.name = name;
@@ -14,44 +17,81 @@ public abstract class Animal {
     }
 
     public double eat() {
-        return size * foodNeed;
+        return getSize() * getFoodNeed();
     }
 
     public double drink() {
-        return size * waterNeed;
+        return getSize() * getWaterNeed();
     }
 
     abstract void makeSound();
 
     public String getName() {
-        return name;
+        return store != null ? store.getName(slot) : name;
     }
 
     public void setName(String name) {
-        this.name = name;
+        if (store != null) {
+            store.setName(slot, name);
+        } else {
+            this.name = name;
+        }
     }
 
     public int getSize() {
-        return size;
+        return store != null ? store.getSize(slot) : size;
     }
 
     public void setSize(int size) {
-        this.size = size;
+        if (store != null) {
+            store.setSize(slot, size);
+        } else {
+            this.size = size;
+        }
     }
 
     public int getFoodNeed() {
-        return foodNeed;
+        return store != null ? store.getFoodNeed(slot) : foodNeed;
     }
 
     public void setFoodNeed(int foodNeed) {
-        this.foodNeed = foodNeed;
+        if (store != null) {
+            store.setFoodNeed(slot, foodNeed);
+        } else {
+            this.foodNeed = foodNeed;
+        }
     }
 
     public int getWaterNeed() {
-        return waterNeed;
+        return store != null ? store.getWaterNeed(slot) : waterNeed;
     }
 
     public void setWaterNeed(int waterNeed) {
+        if (store != null) {
+            store.setWaterNeed(slot, waterNeed);
+        } else {
+            this.waterNeed = waterNeed;
+        }
+    }
+
+    public AnimalStore getStore() {
+        return store;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    void bind(AnimalStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+
+    void unbind(String name, int size, int foodNeed, int waterNeed) {
+        this.store = null;
+        this.name = name;
+        this.size = size;
+        this.foodNeed = foodNeed;
         this.waterNeed = waterNeed;
     }
 }
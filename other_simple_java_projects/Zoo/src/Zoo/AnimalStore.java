@@ -0,0 +1,193 @@
+package Zoo;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Columnar storage for large numbers of animals: size, food need and water need live in parallel
+// int arrays indexed by slot, so the daily consumption is a loop over primitive arrays.
+// Animal objects (Lion, Elephant, ...) added to the store become views of their slot: their getters
+// and setters read and write the columns. Animals added as plain numbers have no object at all.
+public class AnimalStore {
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private int[] sizes;
+    private int[] foodNeeds;
+    private int[] waterNeeds;
+    private String[] names;
+    private Animal[] views;
+    private int count;
+
+    public AnimalStore() {
+        this(16);
+    }
+
+    public AnimalStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        sizes = new int[capacity];
+        foodNeeds = new int[capacity];
+        waterNeeds = new int[capacity];
+        names = new String[capacity];
+        views = new Animal[capacity];
+    }
+
+    // Moves the animal's values into the store, the animal then reads and writes them there
+    public int add(Animal animal) {
+        if (animal.getStore() != null) {
+            throw new IllegalArgumentException("Animal is already in a store: " + animal.getName());
+        }
+        int slot = add(animal.getName(), animal.getSize(), animal.getFoodNeed(), animal.getWaterNeed());
+        views[slot] = animal;
+        animal.bind(this, slot);
+        return slot;
+    }
+
+    public int add(String name, int size, int foodNeed, int waterNeed) {
+        if (count == sizes.length) {
+            int capacity = count * 2;
+            sizes = Arrays.copyOf(sizes, capacity);
+            foodNeeds = Arrays.copyOf(foodNeeds, capacity);
+            waterNeeds = Arrays.copyOf(waterNeeds, capacity);
+            names = Arrays.copyOf(names, capacity);
+            views = Arrays.copyOf(views, capacity);
+        }
+        sizes[count] = size;
+        foodNeeds[count] = foodNeed;
+        waterNeeds[count] = waterNeed;
+        names[count] = name;
+        return count++;
+    }
+
+    // The last animal moves into the freed slot, its view (if any) follows it.
+    // A removed view gets its values back and works on its own again.
+    public void remove(int slot) {
+        checkSlot(slot);
+        Animal removed = views[slot];
+        if (removed != null) {
+            removed.unbind(names[slot], sizes[slot], foodNeeds[slot], waterNeeds[slot]);
+        }
+        int last = --count;
+        sizes[slot] = sizes[last];
+        foodNeeds[slot] = foodNeeds[last];
+        waterNeeds[slot] = waterNeeds[last];
+        names[slot] = names[last];
+        views[slot] = views[last];
+        names[last] = null;
+        views[last] = null;
+        if (slot != last && views[slot] != null) {
+            views[slot].bind(this, slot);
+        }
+    }
+
+    public int count() {
+        return count;
+    }
+
+    // The animal object of a slot, null for animals added as plain numbers
+    public Animal getAnimal(int slot) {
+        checkSlot(slot);
+        return views[slot];
+    }
+
+    // Unchecked column reads for Zoo, which only passes slots it holds
+    Animal view(int slot) {
+        return views[slot];
+    }
+
+    long dailyFood(int slot) {
+        return (long) sizes[slot] * foodNeeds[slot];
+    }
+
+    long dailyWater(int slot) {
+        return (long) sizes[slot] * waterNeeds[slot];
+    }
+
+    public String getName(int slot) {
+        checkSlot(slot);
+        return names[slot];
+    }
+
+    public void setName(int slot, String name) {
+        checkSlot(slot);
+        names[slot] = name;
+    }
+
+    public int getSize(int slot) {
+        checkSlot(slot);
+        return sizes[slot];
+    }
+
+    public void setSize(int slot, int size) {
+        checkSlot(slot);
+        sizes[slot] = size;
+    }
+
+    public int getFoodNeed(int slot) {
+        checkSlot(slot);
+        return foodNeeds[slot];
+    }
+
+    public void setFoodNeed(int slot, int foodNeed) {
+        checkSlot(slot);
+        foodNeeds[slot] = foodNeed;
+    }
+
+    public int getWaterNeed(int slot) {
+        checkSlot(slot);
+        return waterNeeds[slot];
+    }
+
+    public void setWaterNeed(int slot, int waterNeed) {
+        checkSlot(slot);
+        waterNeeds[slot] = waterNeed;
+    }
+
+    // Food all animals eat per day
+    public long dailyFood() {
+        return dailyTotal(sizes, foodNeeds, count);
+    }
+
+    // Water all animals drink per day
+    public long dailyWater() {
+        return dailyTotal(sizes, waterNeeds, count);
+    }
+
+    // Same as dailyFood, split over the common fork-join pool for large stores
+    public long dailyFoodParallel() {
+        return parallelTotal(sizes, foodNeeds, count);
+    }
+
+    public long dailyWaterParallel() {
+        return parallelTotal(sizes, waterNeeds, count);
+    }
+
+    private static long dailyTotal(int[] sizes, int[] needs, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += (long) sizes[i] * needs[i];
+        }
+        return total;
+    }
+
+    private static long parallelTotal(int[] sizes, int[] needs, int count) {
+        if (count < PARALLEL_THRESHOLD) {
+            return dailyTotal(sizes, needs, count);
+        }
+        int chunk = PARALLEL_THRESHOLD;
+        return IntStream.range(0, (count + chunk - 1) / chunk).parallel()
+                .mapToLong(c -> {
+                    long total = 0;
+                    for (int i = c * chunk, end = Math.min(count, i + chunk); i < end; i++) {
+                        total += (long) sizes[i] * needs[i];
+                    }
+                    return total;
+                })
+                .sum();
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= count) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + count + " animals");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package Zoo;
+
+// Free enclosures as a bitset (bit set = free) with a second level marking the words that still
+// have a free bit, so the first free enclosure is found with a few numberOfTrailingZeros.
+// Occupied enclosures are walked a word at a time, empty ones are never visited.
+class FreeEnclosures {
+
+    private final int count;
+    private final long[] free;
+    private final long[] freeWords;
+    // lowest freeWords word that can have a bit set
+    private int freeWordsHint;
+
+    // All enclosures free
+    FreeEnclosures(int count) {
+        this.count = count;
+        free = new long[(count + 63) >>> 6];
+        freeWords = new long[(free.length + 63) >>> 6];
+        for (int i = 0; i < count; i++) {
+            release(i);
+        }
+    }
+
+    FreeEnclosures(FreeEnclosures other) {
+        count = other.count;
+        free = other.free.clone();
+        freeWords = other.freeWords.clone();
+        freeWordsHint = other.freeWordsHint;
+    }
+
+    void take(int slot) {
+        int word = slot >>> 6;
+        free[word] &= ~(1L << slot);
+        if (free[word] == 0) {
+            freeWords[word >>> 6] &= ~(1L << word);
+        }
+    }
+
+    void release(int slot) {
+        int word = slot >>> 6;
+        free[word] |= 1L << slot;
+        freeWords[word >>> 6] |= 1L << word;
+        freeWordsHint = Math.min(freeWordsHint, word >>> 6);
+    }
+
+    // First free enclosure, -1 if all are taken
+    int firstFree() {
+        while (freeWordsHint < freeWords.length && freeWords[freeWordsHint] == 0) {
+            freeWordsHint++;
+        }
+        if (freeWordsHint == freeWords.length) {
+            return -1;
+        }
+        int word = (freeWordsHint << 6) + Long.numberOfTrailingZeros(freeWords[freeWordsHint]);
+        return (word << 6) + Long.numberOfTrailingZeros(free[word]);
+    }
+
+    // First taken enclosure at or after from, -1 if there is none
+    int nextTaken(int from) {
+        if (from >= count) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long taken = ~free[word] & (-1L << from);
+        while (true) {
+            if (taken != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(taken);
+                return slot < count ? slot : -1;
+            }
+            if (++word >= free.length) {
+                return -1;
+            }
+            taken = ~free[word];
+        }
+    }
+}
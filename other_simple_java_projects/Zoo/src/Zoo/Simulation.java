@@ -18,25 +18,19 @@ public class Simulation {
         String date = sdf.format(cal.getTime());
         System.out.println("Simulation starting date: " + date);
 
-        boolean running = true;
-        int daysCalculator = 0;
-        while (running) {
-            for (Animal animal : myZoo.getEnclosures()) {
-                if (animal == null) continue;
-                boolean fed = myZoo.provideFood(animal);
-                boolean watered = myZoo.provideWater(animal);
-                if (!fed || !watered) {
-                    running = false;
-                    break;
-                }
-            }
-            if (running) {
-                daysCalculator++;
-            }
+        SupplyForecast.Result forecast = new SupplyForecast(myZoo).forecast();
+        if (forecast.isUnlimited()) {
+            System.out.println("The animals need no supplies");
+            return;
         }
+        long daysCalculator = forecast.getDays();
 
-        cal.add(Calendar.DAY_OF_MONTH, daysCalculator);
+        cal.add(Calendar.DAY_OF_MONTH, (int) Math.min(daysCalculator, Integer.MAX_VALUE));
         String supplyDate = sdf.format(cal.getTime());
         System.out.println("Next supply date: " +supplyDate);
+        for (Animal animal : forecast.getSuppliedOnLastDay()) {
+            System.out.println("Still supplied on that day: " + animal.getName());
+        }
+        System.out.println("First animal without supplies: " + forecast.getUnsupplied().getName());
     }
 }
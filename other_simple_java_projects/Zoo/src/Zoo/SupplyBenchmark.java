@@ -0,0 +1,126 @@
+package Zoo;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Contention benchmark: several feeder threads supply animals from one stock until it runs out,
+// once with the lock-free Zoo and once with a stock guarded by synchronized, first one animal
+// at a time and then in groups with provideGroup.
+// Usage: SupplyBenchmark [threads] [portions]
+public class SupplyBenchmark {
+
+    private static final int GROUP_SIZE = 8;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int portions = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+        Lion lion = new Lion("Simba", 1, 5, 5);
+
+        for (int round = 1; round <= 3; round++) {
+            Zoo zoo = new Zoo((double) portions * lion.eat(), (double) portions * lion.drink(), 1);
+            long lockFree = run("lock-free   ", threads, portions, () -> zoo.provideFood(lion) && zoo.provideWater(lion));
+
+            SynchronizedStock stock = new SynchronizedStock((double) portions * lion.eat(), (double) portions * lion.drink());
+            long locked = run("synchronized", threads, portions, () -> stock.provideFood(lion) && stock.provideWater(lion));
+
+            System.out.printf("Round %d: lock-free is %.2fx the synchronized throughput%n", round, (double) locked / lockFree);
+        }
+
+        Animal[] group = new Animal[GROUP_SIZE];
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            group[i] = new Lion("Lion " + i, 1, 5, 5);
+        }
+        int groups = portions / GROUP_SIZE;
+        for (int round = 1; round <= 3; round++) {
+            Zoo zoo = new Zoo((double) groups * GROUP_SIZE * lion.eat(), (double) groups * GROUP_SIZE * lion.drink(), 1);
+            long lockFree = run("lock-free    group", threads, groups, () -> zoo.provideGroup(group));
+
+            SynchronizedStock stock = new SynchronizedStock((double) groups * GROUP_SIZE * lion.eat(),
+                    (double) groups * GROUP_SIZE * lion.drink());
+            long locked = run("synchronized group", threads, groups, () -> stock.provideGroup(group));
+
+            System.out.printf("Group round %d: lock-free is %.2fx the synchronized throughput%n", round, (double) locked / lockFree);
+        }
+    }
+
+    private static long run(String name, int threads, int portions, Feeder feeder) throws InterruptedException {
+        AtomicLong supplied = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (feeder.supply()) {
+                    count++;
+                }
+                supplied.addAndGet(count);
+            });
+            workers[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("%s %d threads: %d of %d supplies in %d ms (%.1f M/s)%n", name, threads,
+                supplied.get(), portions, nanos / 1_000_000, supplied.get() * 1000.0 / nanos);
+        if (supplied.get() != portions) {
+            System.out.println("Wrong number of supplies!");
+        }
+        return nanos;
+    }
+
+    private interface Feeder {
+        boolean supply();
+    }
+
+    // The old check-then-subtract accounting on doubles, made safe with a lock
+    private static class SynchronizedStock {
+        private double food;
+        private double water;
+
+        private SynchronizedStock(double food, double water) {
+            this.food = food;
+            this.water = water;
+        }
+
+        private synchronized boolean provideFood(Animal animal) {
+            double neededFood = animal.eat();
+            if (food >= neededFood) {
+                food -= neededFood;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized boolean provideWater(Animal animal) {
+            double neededWater = animal.drink();
+            if (water >= neededWater) {
+                water -= neededWater;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized boolean provideGroup(Animal[] group) {
+            double neededFood = 0;
+            double neededWater = 0;
+            for (Animal animal : group) {
+                neededFood += animal.eat();
+                neededWater += animal.drink();
+            }
+            if (food >= neededFood && water >= neededWater) {
+                food -= neededFood;
+                water -= neededWater;
+                return true;
+            }
+            return false;
+        }
+    }
+}
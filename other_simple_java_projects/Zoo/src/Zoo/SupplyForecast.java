@@ -0,0 +1,218 @@
+package Zoo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Forecasts the day the zoo runs out of food or water without simulating every day.
+// Every day the animals are supplied in enclosure order, first food then water, and the day on
+// which one of them can not be supplied is the supply date (as in Simulation).
+// Stock and needs are whole units, so the forecast uses long arithmetic and is exact.
+public class SupplyForecast {
+
+    private final long food;
+    private final long water;
+    // the zoo's animals per enclosure, needs read from the store columns; an animal added with
+    // Zoo.addAnimals occupies its enclosure without an object
+    private final Animal[] enclosures;
+    private final FreeEnclosures free;
+    private final long[] dailyFood;
+    private final long[] dailyWater;
+    private final List<Change> changes = new ArrayList<>();
+
+    public SupplyForecast(Zoo zoo) {
+        this.food = Math.floorDiv(zoo.getFoodUnits(), Zoo.UNIT);
+        this.water = Math.floorDiv(zoo.getWaterUnits(), Zoo.UNIT);
+        int enclosureCount = zoo.getEnclosureCount();
+        this.enclosures = new Animal[enclosureCount];
+        this.free = zoo.freeEnclosures();
+        this.dailyFood = new long[enclosureCount];
+        this.dailyWater = new long[enclosureCount];
+        for (int slot = free.nextTaken(0); slot >= 0; slot = free.nextTaken(slot + 1)) {
+            enclosures[slot] = zoo.animalIn(slot);
+            dailyFood[slot] = zoo.dailyFoodIn(slot);
+            dailyWater[slot] = zoo.dailyWaterIn(slot);
+        }
+    }
+
+    // Day 0 is the first day of the forecast, changes of a day apply before the animals are supplied
+    public void scheduleDelivery(long day, long food, long water) {
+        if (food < 0 || water < 0) {
+            throw new IllegalArgumentException("Delivery must not be negative");
+        }
+        schedule(new Change(day, food, water, null, false));
+    }
+
+    public void scheduleArrival(long day, Animal animal) {
+        schedule(new Change(day, 0, 0, animal, true));
+    }
+
+    public void scheduleDeparture(long day, Animal animal) {
+        schedule(new Change(day, 0, 0, animal, false));
+    }
+
+    private void schedule(Change change) {
+        if (change.day < 0) {
+            throw new IllegalArgumentException("Day must not be negative: " + change.day);
+        }
+        changes.add(change);
+    }
+
+    public Result forecast() {
+        long[] foodNeeds = this.dailyFood.clone();
+        long[] waterNeeds = this.dailyWater.clone();
+        Animal[] animals = enclosures.clone();
+        // enclosures are taken and released like in Zoo, animal objects are found by identity
+        FreeEnclosures taken = new FreeEnclosures(free);
+        Map<Animal, Integer> slots = new IdentityHashMap<>();
+        long dailyFood = 0;
+        long dailyWater = 0;
+        for (int i = taken.nextTaken(0); i >= 0; i = taken.nextTaken(i + 1)) {
+            dailyFood += foodNeeds[i];
+            dailyWater += waterNeeds[i];
+            if (animals[i] != null) slots.put(animals[i], i);
+        }
+
+        List<Change> ordered = new ArrayList<>(changes);
+        ordered.sort(Comparator.comparingLong(change -> change.day)); // stable, same day keeps schedule order
+
+        long foodLeft = food;
+        long waterLeft = water;
+        long day = 0;
+        int next = 0;
+        while (true) {
+            while (next < ordered.size() && ordered.get(next).day == day) {
+                Change change = ordered.get(next++);
+                if (change.animal == null) {
+                    foodLeft += change.food;
+                    waterLeft += change.water;
+                    continue;
+                }
+                // an arrival takes the first free enclosure like Zoo.addAnimal
+                int slot;
+                if (change.arrival) {
+                    if (slots.containsKey(change.animal)) continue; // already in the zoo
+                    slot = taken.firstFree();
+                    if (slot < 0) continue; // no free enclosure
+                    taken.take(slot);
+                    slots.put(change.animal, slot);
+                } else {
+                    Integer departed = slots.remove(change.animal);
+                    if (departed == null) continue; // not in the zoo
+                    slot = departed;
+                    taken.release(slot);
+                }
+                dailyFood -= foodNeeds[slot];
+                dailyWater -= waterNeeds[slot];
+                animals[slot] = change.arrival ? change.animal : null;
+                foodNeeds[slot] = change.arrival ? (long) change.animal.getSize() * change.animal.getFoodNeed() : 0;
+                waterNeeds[slot] = change.arrival ? (long) change.animal.getSize() * change.animal.getWaterNeed() : 0;
+                dailyFood += foodNeeds[slot];
+                dailyWater += waterNeeds[slot];
+            }
+
+            long fullDays = Math.min(daysCovered(foodLeft, dailyFood), daysCovered(waterLeft, dailyWater));
+            long segment = next < ordered.size() ? ordered.get(next).day - day : Long.MAX_VALUE;
+            if (fullDays == Long.MAX_VALUE && segment == Long.MAX_VALUE) {
+                return new Result(Long.MAX_VALUE, new Animal[0], null, -1, foodLeft, waterLeft);
+            }
+            if (fullDays >= segment) {
+                foodLeft -= segment * dailyFood;
+                waterLeft -= segment * dailyWater;
+                day += segment;
+                continue;
+            }
+            foodLeft -= fullDays * dailyFood;
+            waterLeft -= fullDays * dailyWater;
+            day += fullDays;
+
+            // the last day: supplied until the first animal that can not get its food or water
+            List<Animal> supplied = new ArrayList<>();
+            for (int i = taken.nextTaken(0); i >= 0; i = taken.nextTaken(i + 1)) {
+                boolean fed = foodLeft >= foodNeeds[i];
+                if (fed) foodLeft -= foodNeeds[i];
+                boolean watered = waterLeft >= waterNeeds[i];
+                if (watered) waterLeft -= waterNeeds[i];
+                if (!fed || !watered) {
+                    return new Result(day, supplied.toArray(new Animal[0]), animals[i], i, foodLeft, waterLeft);
+                }
+                if (animals[i] != null) supplied.add(animals[i]);
+            }
+            throw new IllegalStateException("Stock did not run out on day " + day);
+        }
+    }
+
+    private static long daysCovered(long stock, long daily) {
+        return daily == 0 ? Long.MAX_VALUE : stock / daily;
+    }
+
+    private static class Change {
+        private final long day;
+        private final long food;
+        private final long water;
+        private final Animal animal;
+        private final boolean arrival;
+
+        private Change(long day, long food, long water, Animal animal, boolean arrival) {
+            this.day = day;
+            this.food = food;
+            this.water = water;
+            this.animal = animal;
+            this.arrival = arrival;
+        }
+    }
+
+    public static class Result {
+        private final long days;
+        private final Animal[] suppliedOnLastDay;
+        private final Animal unsupplied;
+        private final int unsuppliedEnclosure;
+        private final long foodLeft;
+        private final long waterLeft;
+
+        private Result(long days, Animal[] suppliedOnLastDay, Animal unsupplied, int unsuppliedEnclosure,
+                       long foodLeft, long waterLeft) {
+            this.days = days;
+            this.suppliedOnLastDay = suppliedOnLastDay;
+            this.unsupplied = unsupplied;
+            this.unsuppliedEnclosure = unsuppliedEnclosure;
+            this.foodLeft = foodLeft;
+            this.waterLeft = waterLeft;
+        }
+
+        // Number of days on which every animal got its food and water
+        public long getDays() {
+            return days;
+        }
+
+        public boolean isUnlimited() {
+            return days == Long.MAX_VALUE;
+        }
+
+        // Animal objects supplied on the day the stock ran out, in enclosure order
+        public Animal[] getSuppliedOnLastDay() {
+            return suppliedOnLastDay.clone();
+        }
+
+        // First animal that could not be supplied, null if the stock never runs out
+        // or the animal was added with Zoo.addAnimals
+        public Animal getUnsupplied() {
+            return unsupplied;
+        }
+
+        // Enclosure of that animal, -1 if the stock never runs out
+        public int getUnsuppliedEnclosure() {
+            return unsuppliedEnclosure;
+        }
+
+        public long getFoodLeft() {
+            return foodLeft;
+        }
+
+        public long getWaterLeft() {
+            return waterLeft;
+        }
+    }
+}
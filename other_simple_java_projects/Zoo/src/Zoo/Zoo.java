@@ -1,71 +1,304 @@
 package Zoo;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Zoo {
-    private double food;
-    private double water;
+    // Stock is counted in thousandths of a unit and changed with compare-and-set only,
+    // so feeders on several threads can supply animals without locking
+    static final long UNIT = 1000;
+
+    private final AtomicLong food = new AtomicLong();
+    private final AtomicLong water = new AtomicLong();
     private final int enclosureCount;
-    private Animal[] enclosures;
+    // store slot of the animal in each enclosure, -1 for a free enclosure
+    private final int[] storeSlots;
+    // enclosure of each store slot, follows the animals the store moves on remove
+    private int[] enclosureOf = new int[16];
+    private final FreeEnclosures free;
+    // Sizes and needs of the animals in the zoo, the animals are views of its slots while they are here.
+    // Animals added with addAnimals have no object at all.
+    private final AnimalStore store = new AnimalStore();
 
     public Zoo(double food, double water, int enclosureCount) {
-        this.food = food;
-        this.water = water;
+        this.food.set(toUnits(food));
+        this.water.set(toUnits(water));
         this.enclosureCount = enclosureCount;
-        enclosures = new Animal[enclosureCount];
+        storeSlots = new int[enclosureCount];
+        Arrays.fill(storeSlots, -1);
+        free = new FreeEnclosures(enclosureCount);
     }
 
+    // Puts the animal into the first free enclosure
     public void addAnimal(Animal animal) {
-        boolean enclosureNotFound = true;
-        for (int i = 0; i < enclosureCount; i++) {
-            if (enclosures[i] == null) {
-                enclosures[i] = animal;
-                enclosureNotFound = false;
-                break;
-            }
+        if (animal.getStore() == store) {
+            System.out.println("Animal is already in the zoo!");
+            return;
         }
-        if (enclosureNotFound) {
+        if (animal.getStore() != null) {
+            System.out.println("Animal is already in another zoo!");
+            return;
+        }
+        int slot = free.firstFree();
+        if (slot < 0) {
             System.out.println("No available enclosure!");
+            return;
         }
+        occupy(slot, store.add(animal));
     }
 
-    public boolean provideFood(Animal animal) {
-        double neededFood = animal.eat();
-        if (food >= neededFood) {
-            food -= neededFood;
-            return true;
+    // Puts animals given as plain numbers into the first free enclosures without creating Animal objects,
+    // returns how many of them found an enclosure
+    public int addAnimals(String[] names, int[] sizes, int[] foodNeeds, int[] waterNeeds) {
+        int count = names.length;
+        if (sizes.length != count || foodNeeds.length != count || waterNeeds.length != count) {
+            throw new IllegalArgumentException("Names, sizes and needs must have the same length");
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = free.firstFree();
+            if (slot < 0) {
+                System.out.println("No available enclosure!");
+                return i;
+            }
+            occupy(slot, store.add(names[i], sizes[i], foodNeeds[i], waterNeeds[i]));
+        }
+        return count;
+    }
+
+    private void occupy(int slot, int storeSlot) {
+        free.take(slot);
+        if (storeSlot == enclosureOf.length) {
+            enclosureOf = Arrays.copyOf(enclosureOf, storeSlot * 2);
+        }
+        enclosureOf[storeSlot] = slot;
+        storeSlots[slot] = storeSlot;
+    }
+
+    public boolean removeAnimal(Animal animal) {
+        if (animal.getStore() != store) {
+            return false;
+        }
+        vacate(enclosureOf[animal.getSlot()]);
+        return true;
+    }
+
+    // Empties the given enclosures, returns how many of them held an animal
+    public int removeAnimals(int[] enclosures) {
+        int removed = 0;
+        for (int slot : enclosures) {
+            if (slot >= 0 && slot < enclosureCount && storeSlots[slot] >= 0) {
+                vacate(slot);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void vacate(int slot) {
+        int storeSlot = storeSlots[slot];
+        int last = store.count() - 1;
+        // the store moves its last animal into the freed store slot
+        store.remove(storeSlot);
+        if (storeSlot != last) {
+            enclosureOf[storeSlot] = enclosureOf[last];
+            storeSlots[enclosureOf[storeSlot]] = storeSlot;
         }
-        return false;
+        storeSlots[slot] = -1;
+        free.release(slot);
+    }
+
+    public int getAnimalCount() {
+        return store.count();
+    }
+
+    // Food all animals in the zoo eat per day, summed over the store columns
+    public long getDailyFood() {
+        return store.dailyFood();
+    }
+
+    public long getDailyWater() {
+        return store.dailyWater();
+    }
+
+    // The animal objects in enclosure order, empty enclosures and animals added with addAnimals are skipped
+    public Iterable<Animal> getAnimals() {
+        return () -> new Iterator<Animal>() {
+            private int slot = nextAnimal(0);
+
+            private int nextAnimal(int from) {
+                int next = nextOccupied(from);
+                while (next >= 0 && store.view(storeSlots[next]) == null) {
+                    next = nextOccupied(next + 1);
+                }
+                return next;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot >= 0;
+            }
+
+            @Override
+            public Animal next() {
+                if (slot < 0) {
+                    throw new NoSuchElementException();
+                }
+                Animal animal = store.view(storeSlots[slot]);
+                slot = nextAnimal(slot + 1);
+                return animal;
+            }
+        };
+    }
+
+    // First occupied enclosure at or after from, -1 if there is none
+    int nextOccupied(int from) {
+        return free.nextTaken(from);
+    }
+
+    // A copy of the free enclosures for SupplyForecast
+    FreeEnclosures freeEnclosures() {
+        return new FreeEnclosures(free);
+    }
+
+    // The animal object in an occupied enclosure, null for an animal added with addAnimals
+    Animal animalIn(int slot) {
+        return store.view(storeSlots[slot]);
+    }
+
+    // Food and water of the animal in an occupied enclosure per day, in whole units
+    long dailyFoodIn(int slot) {
+        return store.dailyFood(storeSlots[slot]);
+    }
+
+    long dailyWaterIn(int slot) {
+        return store.dailyWater(storeSlots[slot]);
+    }
+
+    // Supplies every animal with its food and water in enclosure order, read from the store columns.
+    // Returns the first enclosure whose animal did not get both, -1 if all were supplied.
+    int supplyAll() {
+        for (int slot = nextOccupied(0); slot >= 0; slot = nextOccupied(slot + 1)) {
+            boolean fed = reserve(food, dailyFoodIn(slot) * UNIT);
+            boolean watered = reserve(water, dailyWaterIn(slot) * UNIT);
+            if (!fed || !watered) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public boolean provideFood(Animal animal) {
+        return reserve(food, toUnits(animal.eat()));
     }
 
     public boolean provideWater(Animal animal) {
-        double neededWater = animal.drink();
-        if (water >= neededWater) {
-            water -= neededWater;
-            return true;
+        return reserve(water, toUnits(animal.drink()));
+    }
+
+    // Food and water for every animal of the group, all or nothing; null entries are skipped.
+    // Food and water are two counters: if the water runs short after the food was taken, the food
+    // is put back, and until then a feeder on another thread can fail for lack of food it would have got.
+    public boolean provideGroup(Animal[] group) {
+        long neededFood = 0;
+        long neededWater = 0;
+        for (Animal animal : group) {
+            if (animal == null) continue;
+            neededFood += toUnits(animal.eat());
+            neededWater += toUnits(animal.drink());
+        }
+        return reserveBoth(neededFood, neededWater);
+    }
+
+    // Takes food and water for the given number of days at once, all or nothing, like provideGroup
+    public boolean consume(long days, long dailyFood, long dailyWater) {
+        return reserveBoth(unitsFor(days, dailyFood), unitsFor(days, dailyWater));
+    }
+
+    private boolean reserveBoth(long neededFood, long neededWater) {
+        // checking the water first keeps the food untouched in the common stock-out case
+        if (water.get() < neededWater || !reserve(food, neededFood)) {
+            return false;
+        }
+        if (!reserve(water, neededWater)) {
+            food.addAndGet(neededFood);
+            return false;
+        }
+        return true;
+    }
+
+    // Adds stock, safe to call while feeders are running
+    public boolean deliver(double food, double water) {
+        if (!(food >= 0 && water >= 0)) {
+            System.out.println("Delivered amounts must not be negative!");
+            return false;
+        }
+        this.food.addAndGet(toUnits(food));
+        this.water.addAndGet(toUnits(water));
+        return true;
+    }
+
+    private static boolean reserve(AtomicLong stock, long amount) {
+        while (true) {
+            long available = stock.get();
+            if (available < amount) {
+                return false;
+            }
+            if (stock.compareAndSet(available, available - amount)) {
+                return true;
+            }
         }
-        return false;
+    }
+
+    static long toUnits(double amount) {
+        return Math.round(amount * UNIT);
+    }
+
+    // days * daily whole units in thousandths, more than any stock if it overflows
+    private static long unitsFor(long days, long daily) {
+        try {
+            return Math.multiplyExact(Math.multiplyExact(days, daily), UNIT);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // Exact stock in thousandths of a unit, getFood() rounds above 2^53 thousandths
+    long getFoodUnits() {
+        return food.get();
+    }
+
+    long getWaterUnits() {
+        return water.get();
     }
 
     public double getFood() {
-        return food;
+        return (double) food.get() / UNIT;
     }
 
     public void setFood(double food) {
-        this.food = food;
+        this.food.set(toUnits(food));
     }
 
     public double getWater() {
-        return water;
+        return (double) water.get() / UNIT;
     }
 
     public void setWater(double water) {
-        this.water = water;
+        this.water.set(toUnits(water));
     }
 
     public int getEnclosureCount() {
         return enclosureCount;
     }
 
+    // A copy of the enclosures, null for empty enclosures and animals added with addAnimals
     public Animal[] getEnclosures() {
+        Animal[] enclosures = new Animal[enclosureCount];
+        for (int slot = nextOccupied(0); slot >= 0; slot = nextOccupied(slot + 1)) {
+            enclosures[slot] = animalIn(slot);
+        }
         return enclosures;
     }
 
@@ -0,0 +1,7 @@
+package Zoo;
+
+// Something that happens in a zoo on a day, see ZooScheduler
+public interface ZooEvent {
+
+    void happen(Zoo zoo, long day);
+}
@@ -0,0 +1,171 @@
+package Zoo;
+
+import java.util.PriorityQueue;
+
+// Discrete-event simulation of a zoo. Events are kept in a priority queue ordered by day and then by
+// the order they were scheduled in. The clock jumps from one event day to the next: the days in
+// between are supplied in one step from the daily totals, and only the day the stock runs out is
+// played animal by animal (as in Simulation). All events of a day are applied as one batch before
+// the animals are supplied on that day.
+public class ZooScheduler {
+
+    private final Zoo zoo;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private long day;
+    private long sequence;
+    private long processedEvents;
+    private long stockOutDay = -1;
+    private int unsuppliedEnclosure = -1;
+    private Animal unsupplied;
+
+    public ZooScheduler(Zoo zoo) {
+        this.zoo = zoo;
+    }
+
+    public void schedule(long day, ZooEvent event) {
+        if (day < this.day) {
+            throw new IllegalArgumentException("Day " + day + " is in the past, the simulation is at day " + this.day);
+        }
+        queue.add(new Entry(day, sequence++, event));
+    }
+
+    // Repeats the event every interval days, starting at firstDay
+    public void scheduleEvery(long firstDay, long interval, ZooEvent event) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        schedule(firstDay, new ZooEvent() {
+            @Override
+            public void happen(Zoo zoo, long day) {
+                event.happen(zoo, day);
+                if (day <= Long.MAX_VALUE - interval) {
+                    schedule(day + interval, this);
+                }
+            }
+        });
+    }
+
+    public void scheduleDelivery(long day, double food, double water) {
+        schedule(day, (zoo, today) -> zoo.deliver(food, water));
+    }
+
+    public void scheduleArrival(long day, Animal animal) {
+        schedule(day, (zoo, today) -> zoo.addAnimal(animal));
+    }
+
+    public void scheduleDeparture(long day, Animal animal) {
+        schedule(day, (zoo, today) -> zoo.removeAnimal(animal));
+    }
+
+    public void scheduleNeedChange(long day, Animal animal, int foodNeed, int waterNeed) {
+        schedule(day, (zoo, today) -> {
+            animal.setFoodNeed(foodNeed);
+            animal.setWaterNeed(waterNeed);
+        });
+    }
+
+    // Runs the days before endDay, events on endDay stay scheduled.
+    // Returns false if the stock ran out first, the clock is then on the day after the stock-out
+    // and run can continue once a delivery has been scheduled.
+    public boolean run(long endDay) {
+        while (day < endDay) {
+            long next = queue.isEmpty() ? endDay : Math.min(queue.peek().day, endDay);
+            if (!supply(next - day)) {
+                return false;
+            }
+            day = next;
+            while (!queue.isEmpty() && queue.peek().day == day) {
+                queue.poll().event.happen(zoo, day);
+                processedEvents++;
+            }
+        }
+        return true;
+    }
+
+    // Supplies the animals for the given number of days starting today
+    private boolean supply(long days) {
+        long dailyFood = zoo.getDailyFood();
+        long dailyWater = zoo.getDailyWater();
+        while (days > 0) {
+            // stock is read in exact units; consume fails only if feeders on other threads took stock
+            // since it was read, then retry
+            long fullDays = Math.min(daysCovered(zoo.getFoodUnits(), dailyFood), daysCovered(zoo.getWaterUnits(), dailyWater));
+            if (fullDays >= days) {
+                if (zoo.consume(days, dailyFood, dailyWater)) {
+                    return true;
+                }
+                continue;
+            }
+            if (fullDays > 0 && !zoo.consume(fullDays, dailyFood, dailyWater)) {
+                continue;
+            }
+            day += fullDays;
+            days -= fullDays;
+            int failed = zoo.supplyAll();
+            if (failed >= 0) {
+                unsuppliedEnclosure = failed;
+                unsupplied = zoo.animalIn(failed);
+                stockOutDay = day++;
+                return false;
+            }
+            // a delivery on another thread covered this day after all
+            day++;
+            days--;
+        }
+        return true;
+    }
+
+    private static long daysCovered(long units, long daily) {
+        // floor(units / (daily * UNIT)) in long arithmetic, exact for any stock
+        return daily == 0 ? Long.MAX_VALUE : Math.max(0, units / Zoo.UNIT / daily);
+    }
+
+    public Zoo getZoo() {
+        return zoo;
+    }
+
+    public long getDay() {
+        return day;
+    }
+
+    public int getPendingEvents() {
+        return queue.size();
+    }
+
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    // Day of the last stock-out, -1 if the stock never ran out
+    public long getStockOutDay() {
+        return stockOutDay;
+    }
+
+    // First animal that was not supplied on the stock-out day, null if it was added with Zoo.addAnimals
+    public Animal getUnsupplied() {
+        return unsupplied;
+    }
+
+    // Enclosure of that animal, -1 if the stock never ran out
+    public int getUnsuppliedEnclosure() {
+        return unsuppliedEnclosure;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final long day;
+        private final long sequence;
+        private final ZooEvent event;
+
+        private Entry(long day, long sequence, ZooEvent event) {
+            this.day = day;
+            this.sequence = sequence;
+            this.event = event;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDay = Long.compare(day, other.day);
+            return byDay != 0 ? byDay : Long.compare(sequence, other.sequence);
+        }
+    }
+}